@@ -0,0 +1,76 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Measures the per-game cost of the minPathLengthToTarget calls made by GameState <br>
+ * (constructor, hunt(), scram() and computeStepsToScram()), once with a new search <br>
+ * for every call and once with the cached distance field of Cavern.
+ *
+ * Usage: DistanceFieldBenchmark [games] [rounds] */
+public class DistanceFieldBenchmark {
+
+	/** Run the benchmark. args are explained above. */
+	public static void main(String[] args) {
+		int games= args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int rounds= args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		// Generate the caverns once, and keep serialized copies so that every
+		// timed round starts from caverns whose distance field is not computed yet.
+		List<List<String>> hunts= new ArrayList<>(games);
+		List<List<String>> scrams= new ArrayList<>(games);
+		for (long seed= 1; seed <= games; seed++ ) {
+			Random rand= new Random(seed);
+			int rows= rand.nextInt(GameState.MAX_ROWS - GameState.MIN_ROWS + 1) + GameState.MIN_ROWS;
+			int cols= rand.nextInt(GameState.MAX_COLS - GameState.MIN_COLS + 1) + GameState.MIN_COLS;
+			Cavern hunt= Cavern.digHuntCavern(rows, cols, rand);
+			Tile orb= hunt.getTarget().getTile();
+			Cavern scram= Cavern.digHuntCavern(rows, cols, orb.getRow(), orb.getColumn(), rand);
+			hunts.add(hunt.serialize());
+			scrams.add(scram.serialize());
+		}
+
+		for (int r= 1; r <= rounds; r++ ) {
+			long search= time(hunts, scrams, false);
+			long field= time(hunts, scrams, true);
+			System.out.println("Round " + r + " : search " + search / games + " ns/game, field " +
+				field / games + " ns/game, saving " +
+				String.format("%.1f", 100.0 * (search - field) / search) + "%");
+		}
+	}
+
+	/** Return the total nanoseconds spent making the distance calls of one game for each <br>
+	 * pair of hunt and scram caverns, using the cached field iff cached. */
+	private static long time(List<List<String>> hunts, List<List<String>> scrams, boolean cached) {
+		List<Cavern> hs= new ArrayList<>(hunts.size());
+		List<Cavern> ss= new ArrayList<>(scrams.size());
+		for (int i= 0; i < hunts.size(); i++ ) {
+			hs.add(Cavern.deserialize(hunts.get(i)));
+			ss.add(Cavern.deserialize(scrams.get(i)));
+		}
+
+		long sum= 0;
+		long t0= System.nanoTime();
+		for (int i= 0; i < hs.size(); i++ ) {
+			Cavern h= hs.get(i);
+			Cavern s= ss.get(i);
+			Tile orb= h.getTarget().getTile();
+			Node start= s.getNodeAt(orb.getRow(), orb.getColumn());
+			if (cached) {
+				sum+= h.minPathLengthToTarget(h.getEntrance()); // constructor
+				sum+= h.minPathLengthToTarget(h.getEntrance()); // hunt()
+				sum+= s.minPathLengthToTarget(start);           // scram()
+				sum+= s.minPathLengthToTarget(start);           // computeStepsToScram()
+			} else {
+				sum+= h.searchPathLengthToTarget(h.getEntrance());
+				sum+= h.searchPathLengthToTarget(h.getEntrance());
+				sum+= s.searchPathLengthToTarget(start);
+				sum+= s.searchPathLengthToTarget(start);
+			}
+		}
+		long elapsed= System.nanoTime() - t0;
+		if (sum == 42) System.out.println(); // keep the calls from being optimized away
+		return elapsed;
+	}
+}
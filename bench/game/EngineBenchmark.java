@@ -0,0 +1,383 @@
+package game;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import app.Heap;
+import app.IndexHeap;
+import app.AnytimeScramPlanner;
+import app.ExactScramSolver;
+import app.Path;
+import app.ScramSolver;
+
+/** Micro-benchmarks of the engine: cavern generation, serialization round trips, <br>
+ * single-source shortest paths, distance matrices and heap operation mixes. <br>
+ * Each benchmark runs on caverns of several sizes generated from fixed seeds, <br>
+ * first for warm-up iterations and then for measured iterations of fixed duration, <br>
+ * and reports throughput (ops/s) and, with -gc, the bytes allocated per operation. <br>
+ * path.expanded reports the nodes each Path.Mode expands per search, and scram.gold <br>
+ * the gold and planning time of the ScramSolver plan of each scram. scram.anytime reports <br>
+ * the gold of the AnytimeScramPlanner plan for several deadlines, and scram.exact the gold <br>
+ * of the ExactScramSolver plan against the ScramSolver plan where it is exact.
+ *
+ * Usage: EngineBenchmark [-b name-prefix] [-gc] [-w warmups] [-i iterations] [-t millis] <br>
+ * ... [-sizes 8x12,25x40,100x160] */
+public class EngineBenchmark {
+
+	/** Seeds of the caverns each benchmark cycles through. */
+	private static final long[] SEEDS= { 1, 2, 3, 4, 5, 6, 7, 8 };
+
+	/** Default sizes: the smallest and largest allowed caverns and two beyond them. */
+	private static final String DEFAULT_SIZES= GameState.MIN_ROWS + "x" + GameState.MIN_COLS +
+		"," + GameState.MAX_ROWS + "x" + GameState.MAX_COLS + ",100x160,250x400";
+
+	/** Number of heap operations in one heap-mix operation. */
+	private static final int HEAP_OPS= 1000;
+
+	/** Number of gold tiles among the nodes of the sssp.matrix distance matrix. */
+	private static final int MATRIX_GOLD= 32;
+
+	/** An operation to be measured; op(i) runs the i-th operation and returns a value <br>
+	 * that depends on its work, so that the work cannot be optimized away. */
+	private interface Op {
+		long op(int i);
+	}
+
+	private final int warmups;
+	private final int iterations;
+	private final long millis;
+	private final boolean gc;
+	private long sink;
+
+	/** Constructor: a harness with w warm-up and it measured iterations of ms <br>
+	 * milliseconds each, reporting allocation iff alloc. */
+	private EngineBenchmark(int w, int it, long ms, boolean alloc) {
+		warmups= w;
+		iterations= it;
+		millis= ms;
+		gc= alloc;
+	}
+
+	/** Run the benchmarks. args are explained above. */
+	public static void main(String[] args) {
+		List<String> argList= new ArrayList<>(Arrays.asList(args));
+		String prefix= option(argList, "-b", "");
+		EngineBenchmark b= new EngineBenchmark(Integer.parseInt(option(argList, "-w", "3")),
+			Integer.parseInt(option(argList, "-i", "5")),
+			Long.parseLong(option(argList, "-t", "500")), argList.contains("-gc"));
+
+		for (String size : option(argList, "-sizes", DEFAULT_SIZES).split(",")) {
+			String[] rc= size.split("x");
+			int rows= Integer.parseInt(rc[0]);
+			int cols= Integer.parseInt(rc[1]);
+
+			List<Cavern> hunts= new ArrayList<>();
+			List<Cavern> scrams= new ArrayList<>();
+			List<List<String>> serialized= new ArrayList<>();
+			for (long seed : SEEDS) {
+				Random rand= new Random(seed);
+				Cavern h= Cavern.digHuntCavern(rows, cols, rand);
+				Tile orb= h.getTarget().getTile();
+				Cavern s= Cavern.digHuntCavern(rows, cols, orb.getRow(), orb.getColumn(), rand);
+				hunts.add(h);
+				scrams.add(s);
+				serialized.add(s.serialize());
+			}
+			int n= SEEDS.length;
+
+			b.run(prefix, "generate.hunt", size, (i) -> Cavern
+				.digHuntCavern(rows, cols, new Random(SEEDS[i % n])).numOpenTiles());
+			b.run(prefix, "generate.scram", size, (i) -> {
+				Tile orb= hunts.get(i % n).getTarget().getTile();
+				return Cavern.digHuntCavern(rows, cols, orb.getRow(), orb.getColumn(),
+					new Random(SEEDS[i % n])).numOpenTiles();
+			});
+			b.run(prefix, "serialize", size, (i) -> scrams.get(i % n).serialize().size());
+			b.run(prefix, "deserialize", size,
+				(i) -> Cavern.deserialize(serialized.get(i % n)).numOpenTiles());
+			b.run(prefix, "roundtrip", size, (i) -> Cavern
+				.deserialize(scrams.get(i % n).serialize()).numOpenTiles());
+			b.run(prefix, "sssp.search", size, (i) -> {
+				Cavern c= scrams.get(i % n);
+				return c.searchPathLengthToTarget(c.getNodeAt(
+					hunts.get(i % n).getTarget().getTile().getRow(),
+					hunts.get(i % n).getTarget().getTile().getColumn()));
+			});
+			List<GridDijkstra> engines= new ArrayList<>();
+			for (Cavern c : scrams) {
+				engines.add(new GridDijkstra(c.getAdjacency()));
+			}
+			b.run(prefix, "sssp.full", size, (i) -> {
+				GridDijkstra engine= engines.get(i % n);
+				return engine.distancesFrom(engine.index(scrams.get(i % n).getTarget()))[0];
+			});
+			List<List<Node>> keyNodes= new ArrayList<>();
+			for (int i= 0; i < n; i++ ) {
+				keyNodes.add(keyNodes(hunts.get(i), scrams.get(i)));
+			}
+			b.run(prefix, "sssp.matrix", size,
+				(i) -> scrams.get(i % n).distanceMatrix(keyNodes.get(i % n)).distance(0, 1));
+			for (Path.Mode mode : Path.Mode.values()) {
+				b.run(prefix, "path." + mode.name().toLowerCase(), size, (i) -> {
+					Cavern c= scrams.get(i % n);
+					Tile orb= hunts.get(i % n).getTarget().getTile();
+					return Path.shortest(c.getNodeAt(orb.getRow(), orb.getColumn()), c.getTarget(),
+						mode).size();
+				});
+			}
+			if ("path.expanded".startsWith(prefix)) printExpansions(size, hunts, scrams);
+			b.run(prefix, "scram.plan", size,
+				(i) -> scramSolver(hunts.get(i % n), scrams.get(i % n)).plan().length);
+			if ("scram.gold".startsWith(prefix)) printScramPlans(size, hunts, scrams);
+			if ("scram.anytime".startsWith(prefix)) printAnytimePlans(size, hunts, scrams);
+			if ("scram.exact".startsWith(prefix)) printExactPlans(size, hunts, scrams);
+		}
+
+		b.run(prefix, "heap.app", "" + HEAP_OPS, (i) -> appHeapMix(i));
+		b.run(prefix, "heap.app.index2", "" + HEAP_OPS, (i) -> appIndexHeapMix(i, 2));
+		b.run(prefix, "heap.app.index4", "" + HEAP_OPS, (i) -> appIndexHeapMix(i, 4));
+		b.run(prefix, "heap.internal", "" + HEAP_OPS, (i) -> internalHeapMix(i));
+		if (b.sink == 42) System.out.println(); // keep the operations from being optimized away
+	}
+
+	/** Return the value following option name in argList, or def if it is absent. */
+	private static String option(List<String> argList, String name, String def) {
+		int k= argList.indexOf(name);
+		return k >= 0 && k + 1 < argList.size() ? argList.get(k + 1) : def;
+	}
+
+	/** Run benchmark name with parameter param using op, if name starts with prefix, <br>
+	 * and print one result line. */
+	private void run(String prefix, String name, String param, Op op) {
+		if (!name.startsWith(prefix)) return;
+		for (int w= 0; w < warmups; w++ ) {
+			iterate(op);
+		}
+		double[] opsPerSec= new double[iterations];
+		double bytes= 0;
+		long ops= 0;
+		for (int it= 0; it < iterations; it++ ) {
+			long before= allocatedBytes();
+			long t0= System.nanoTime();
+			long k= iterate(op);
+			long elapsed= System.nanoTime() - t0;
+			bytes+= allocatedBytes() - before;
+			ops+= k;
+			opsPerSec[it]= k * 1e9 / elapsed;
+		}
+		Arrays.sort(opsPerSec);
+		double mean= Arrays.stream(opsPerSec).average().orElse(0);
+		String line= String.format("%-18s %-10s %12.1f ops/s  (min %.1f, max %.1f)", name, param,
+			mean, opsPerSec[0], opsPerSec[iterations - 1]);
+		if (gc) {
+			line+= String.format("  %12.0f B/op", bytes / ops);
+		}
+		System.out.println(line);
+	}
+
+	/** Print the mean number of nodes each Path.Mode expands to find the scram path <br>
+	 * from the orb to the exit, over the caverns hunts and scrams of size size. */
+	private static void printExpansions(String size, List<Cavern> hunts, List<Cavern> scrams) {
+		String line= String.format("%-18s %-10s", "path.expanded", size);
+		for (Path.Mode mode : Path.Mode.values()) {
+			Path.resetExpansions();
+			for (int i= 0; i < scrams.size(); i++ ) {
+				Cavern c= scrams.get(i);
+				Tile orb= hunts.get(i).getTarget().getTile();
+				Path.shortest(c.getNodeAt(orb.getRow(), orb.getColumn()), c.getTarget(), mode);
+			}
+			line+= String.format(" %s %.1f", mode.name().toLowerCase(),
+				Path.expansions(mode) / (double) scrams.size());
+		}
+		System.out.println(line);
+	}
+
+	/** Return a ScramSolver for the scram of cavern scram from the orb of cavern hunt, <br>
+	 * with the steps a game would give. */
+	private static ScramSolver scramSolver(Cavern hunt, Cavern scram) {
+		Node start= scramStart(hunt, scram);
+		return new ScramSolver(start, scram.getTarget(), scram.getGraph(),
+			scramSteps(start, scram));
+	}
+
+	/** Return the node of cavern scram where the scram from the orb of cavern hunt starts. */
+	private static Node scramStart(Cavern hunt, Cavern scram) {
+		Tile orb= hunt.getTarget().getTile();
+		return scram.getNodeAt(orb.getRow(), orb.getColumn());
+	}
+
+	/** Return the scram start (from the orb of cavern hunt), the exit and the first <br>
+	 * MATRIX_GOLD gold tiles of cavern scram, in that order. */
+	private static List<Node> keyNodes(Cavern hunt, Cavern scram) {
+		List<Node> ns= new ArrayList<>();
+		ns.add(scramStart(hunt, scram));
+		ns.add(scram.getTarget());
+		for (Node v : scram.getGraph()) {
+			if (ns.size() == MATRIX_GOLD + 2) break;
+			if (v.getTile().gold() > 0) ns.add(v);
+		}
+		return ns;
+	}
+
+	/** Return the steps a game gives to scram from node start of cavern scram. */
+	private static int scramSteps(Node start, Cavern scram) {
+		return GameState.scramSteps(scram.minPathLengthToTarget(start), scram.numOpenTiles());
+	}
+
+	/** Print the mean gold on the tours planned by ScramSolver for the caverns hunts and <br>
+	 * scrams of size size, the mean gold on the shortest path, and the mean planning time. */
+	private static void printScramPlans(String size, List<Cavern> hunts, List<Cavern> scrams) {
+		long planned= 0;
+		long direct= 0;
+		long nanos= 0;
+		for (int i= 0; i < scrams.size(); i++ ) {
+			ScramSolver solver= scramSolver(hunts.get(i), scrams.get(i));
+			planned+= solver.gold(solver.plan());
+			nanos+= solver.planningNanos();
+			for (Node v : Path.shortest(scramStart(hunts.get(i), scrams.get(i)),
+				scrams.get(i).getTarget())) {
+				direct+= v.getTile().gold();
+			}
+		}
+		int k= scrams.size();
+		System.out.println(String.format("%-18s %-10s planned %.1f shortest %.1f plan %.2f ms",
+			"scram.gold", size, planned / (double) k, direct / (double) k, nanos / 1e6 / k));
+	}
+
+	/** Print the mean gold on the plans of an AnytimeScramPlanner for the caverns hunts and <br>
+	 * scrams of size size, for several deadlines. */
+	private static void printAnytimePlans(String size, List<Cavern> hunts, List<Cavern> scrams) {
+		String line= String.format("%-18s %-10s", "scram.anytime", size);
+		int workers= Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		for (long millis : new long[] { 10, 100 }) {
+			long gold= 0;
+			for (int i= 0; i < scrams.size(); i++ ) {
+				Cavern c= scrams.get(i);
+				Node start= scramStart(hunts.get(i), c);
+				AnytimeScramPlanner p= new AnytimeScramPlanner(start, c.getTarget(), c.getGraph(),
+					scramSteps(start, c), millis, workers);
+				try {
+					p.awaitDeadline();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				gold+= p.bestGold();
+			}
+			line+= String.format(" %dms %.1f", millis, gold / (double) scrams.size());
+		}
+		System.out.println(line);
+	}
+
+	/** Print how many of the scrams of size size (from the caverns hunts) ExactScramSolver <br>
+	 * plans exactly with its largest threshold and, over those, the mean gold on its plan <br>
+	 * and on the ScramSolver plan, and the mean time of the exact plan. */
+	private static void printExactPlans(String size, List<Cavern> hunts, List<Cavern> scrams) {
+		int exact= 0;
+		long best= 0;
+		long planned= 0;
+		long nanos= 0;
+		for (int i= 0; i < scrams.size(); i++ ) {
+			ExactScramSolver e= new ExactScramSolver(scramSolver(hunts.get(i), scrams.get(i)),
+				ExactScramSolver.MAX_EXACT_GOLD);
+			if (!e.isExact()) continue;
+			exact++ ;
+			long t= System.nanoTime();
+			best+= e.solver().gold(e.plan());
+			nanos+= System.nanoTime() - t;
+			planned+= e.solver().gold(e.solver().plan());
+		}
+		int k= Math.max(1, exact);
+		System.out.println(String.format("%-18s %-10s exact %d/%d best %.1f planned %.1f " +
+			"plan %.2f ms", "scram.exact", size, exact, scrams.size(), best / (double) k,
+			planned / (double) k, nanos / 1e6 / k));
+	}
+
+	/** Run op for millis milliseconds and return the number of operations run. */
+	private long iterate(Op op) {
+		long end= System.nanoTime() + millis * 1_000_000;
+		int i= 0;
+		do {
+			sink+= op.op(i);
+			i++ ;
+		} while (System.nanoTime() < end);
+		return i;
+	}
+
+	/** Return the number of bytes allocated so far by the current thread, <br>
+	 * or 0 if the JVM cannot tell. */
+	private static long allocatedBytes() {
+		ThreadMXBean bean= ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean)
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/** Return a fixed pseudo-random sequence of priorities for the i-th heap mix. */
+	private static int[] priorities(int i) {
+		Random rand= new Random(i % SEEDS.length);
+		int[] p= new int[2 * HEAP_OPS];
+		for (int k= 0; k < p.length; k++ ) {
+			p[k]= rand.nextInt(10 * HEAP_OPS);
+		}
+		return p;
+	}
+
+	/** Add HEAP_OPS values to an app.Heap, lower half of their priorities, <br>
+	 * and poll them all; return the last value polled. */
+	private static long appHeapMix(int i) {
+		int[] p= priorities(i);
+		Heap<Integer> h= new Heap<>(false);
+		for (int k= 0; k < HEAP_OPS; k++ ) {
+			h.add(k, p[k]);
+		}
+		for (int k= 0; k < HEAP_OPS; k+= 2) {
+			h.updatePriority(k, p[HEAP_OPS + k] / 2);
+		}
+		int last= 0;
+		while (h.size() > 0) {
+			last= h.poll();
+		}
+		return last;
+	}
+
+	/** Same as appHeapMix, for an app.IndexHeap of arity d. */
+	private static long appIndexHeapMix(int i, int d) {
+		int[] p= priorities(i);
+		IndexHeap h= new IndexHeap(HEAP_OPS, false, d);
+		for (int k= 0; k < HEAP_OPS; k++ ) {
+			h.add(k, p[k]);
+		}
+		for (int k= 0; k < HEAP_OPS; k+= 2) {
+			h.updatePriority(k, p[HEAP_OPS + k] / 2);
+		}
+		int last= 0;
+		while (h.size() > 0) {
+			last= h.poll();
+		}
+		return last;
+	}
+
+	/** Same as appHeapMix, for InternalMinHeap. */
+	private static long internalHeapMix(int i) {
+		int[] p= priorities(i);
+		InternalMinHeap h= new InternalMinHeap(HEAP_OPS);
+		for (int k= 0; k < HEAP_OPS; k++ ) {
+			h.add(k, p[k]);
+		}
+		for (int k= 0; k < HEAP_OPS; k+= 2) {
+			h.changePriority(k, p[HEAP_OPS + k] / 2);
+		}
+		int last= 0;
+		while (!h.isEmpty()) {
+			last= h.poll();
+		}
+		return last;
+	}
+}
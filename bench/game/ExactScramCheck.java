@@ -0,0 +1,109 @@
+package game;
+
+import java.util.Random;
+
+import app.ExactScramSolver;
+import app.ScramSolver;
+
+/** Checks ExactScramSolver against brute force on small caverns. For each seed it digs a <br>
+ * hunt and a scram cavern as a game does, gives the scram a budget of the game's steps <br>
+ * divided by a divisor (at least the shortest path to the exit, so that tight budgets are <br>
+ * checked too), and, where the plan is exact and there are few gold tiles, compares its <br>
+ * gold with the most gold of any tour found by trying every order of gold tiles. <br>
+ * It also checks that every exact plan is a tour within the budget and that the <br>
+ * ScramSolver plan never collects more gold. It prints each mismatch and a summary, <br>
+ * and exits with status 1 if there was a mismatch.
+ *
+ * Usage: ExactScramCheck [caverns] [rowsxcols] [divisor] (default 2000 6x8 3) */
+public class ExactScramCheck {
+
+	/** Largest number of gold tiles checked by brute force. */
+	private static final int BRUTE_MAX_GOLD= 9;
+
+	/** Run the check. args are explained above. */
+	public static void main(String[] args) {
+		int caverns= args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		String[] rc= (args.length > 1 ? args[1] : "6x8").toLowerCase().split("x");
+		int rows= Integer.parseInt(rc[0]);
+		int cols= Integer.parseInt(rc[1]);
+		int divisor= args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		int exact= 0;
+		int checked= 0;
+		int bad= 0;
+		for (long seed= 1; seed <= caverns; seed++ ) {
+			Random rand= new Random(seed);
+			Cavern hunt= Cavern.digHuntCavern(rows, cols, rand);
+			Tile orb= hunt.getTarget().getTile();
+			Cavern scram= Cavern.digHuntCavern(rows, cols, orb.getRow(), orb.getColumn(), rand);
+			Node start= scram.getNodeAt(orb.getRow(), orb.getColumn());
+			int min= scram.minPathLengthToTarget(start);
+			int steps= Math.max(min, GameState.scramSteps(min, scram.numOpenTiles()) / divisor);
+
+			ScramSolver solver= new ScramSolver(start, scram.getTarget(), scram.getGraph(), steps);
+			ExactScramSolver e= new ExactScramSolver(solver, ExactScramSolver.MAX_EXACT_GOLD);
+			if (!e.isExact()) continue;
+			exact++ ;
+
+			int[] tour= e.plan();
+			String error= checkTour(solver, tour);
+			int gold= solver.gold(tour);
+			if (error == null && solver.gold(solver.plan()) > gold) {
+				error= "the ScramSolver plan collects more gold";
+			}
+			if (error == null && solver.keyCount() - 2 <= BRUTE_MAX_GOLD) {
+				checked++ ;
+				int n= solver.keyCount();
+				// Every tour ends at the exit, so it collects the exit's gold.
+				int best= mostGold(solver, 0, new boolean[n], 0, solver.keyGold(n - 1));
+				if (best != gold) error= "brute force " + best + ", exact plan " + gold;
+			}
+			if (error != null) {
+				bad++ ;
+				System.out.println("seed " + seed + ": " + error);
+			}
+		}
+		System.out.println("exact plans " + exact + ", checked by brute force " + checked +
+			", mismatches " + bad);
+		if (bad > 0) System.exit(1);
+	}
+
+	/** Return what is wrong with tour as a tour of solver, or null if it is fine: <br>
+	 * from the start to the exit, through distinct gold tiles, within the budget. */
+	private static String checkTour(ScramSolver solver, int[] tour) {
+		int n= solver.keyCount();
+		if (tour.length < 2 || tour[0] != 0 || tour[tour.length - 1] != n - 1) {
+			return "the tour does not go from the start to the exit";
+		}
+		boolean[] seen= new boolean[n];
+		for (int k= 1; k < tour.length - 1; k++ ) {
+			if (tour[k] <= 0 || tour[k] >= n - 1 || seen[tour[k]]) {
+				return "the tour repeats a key or has a bad one: " + tour[k];
+			}
+			seen[tour[k]]= true;
+		}
+		if (solver.length(tour) > solver.budget()) {
+			return "the tour takes " + solver.length(tour) + " steps, more than " +
+				solver.budget();
+		}
+		return null;
+	}
+
+	/** Return the most gold that a tour can collect after reaching key last in len steps <br>
+	 * with gold gold, visiting only keys not used yet and ending at the exit within <br>
+	 * the budget, or -1 if the exit cannot be reached in time from last. */
+	private static int mostGold(ScramSolver solver, int last, boolean[] used, long len,
+		int gold) {
+		int n= solver.keyCount();
+		if (len + solver.distance(last, n - 1) > solver.budget()) return -1;
+		int best= gold;
+		for (int j= 1; j < n - 1; j++ ) {
+			if (used[j]) continue;
+			used[j]= true;
+			best= Math.max(best, mostGold(solver, j, used, len + solver.distance(last, j),
+				gold + solver.keyGold(j)));
+			used[j]= false;
+		}
+		return best;
+	}
+}
@@ -0,0 +1,182 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import game.DistanceMatrix;
+import game.Node;
+import game.ScramState;
+
+/** An instance plans a scram in the background until a deadline, and can commit to the <br>
+ * best plan found so far at any moment.
+ *
+ * The constructor computes a shortest path to the exit (or takes a ScramSolver and a tour <br>
+ * of it), so a safe plan exists at once. Workers then build a ScramSolver and take its <br>
+ * plan() if needed, and keep improving on the best tour by iterated local search <br>
+ * (ScramSolver.perturb from the best tour so far, each worker with its own random <br>
+ * sequence) until the deadline or until follow() is called. The workers run on a pool of <br>
+ * daemon threads shared by all planners, and follow() interrupts them: the solver then <br>
+ * stops early, so no worker keeps running once the plan is committed to. <br>
+ * Every tour fits in the steps left, so whichever plan is committed to gets out. <br>
+ * The longer the deadline, the more gold the plan tends to collect: the deadline trades <br>
+ * the time taken by scram against its score. It must leave time to walk the plan before <br>
+ * the scram phase times out. */
+public class AnytimeScramPlanner {
+
+    /** Threads shared by all planners (daemons, reused from scram to scram). */
+    private static final ExecutorService POOL= Executors.newCachedThreadPool((r) -> {
+        Thread t= new Thread(r, "scram-planner");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** The shortest paths to the exit (node 0 of it), for the safe plan while there is <br>
+     * no solver yet (null if the solver was given to the constructor). */
+    private final DistanceMatrix toExit;
+
+    /** The time (System.nanoTime()) at which the workers stop. */
+    private final long deadline;
+
+    /** The tasks of the workers in POOL. */
+    private final List<Future<?>> tasks= new ArrayList<>();
+    /** Counted down by each worker when it stops. */
+    private final CountDownLatch done;
+    private volatile boolean stopped;
+
+    /** The solver, once given to the constructor or built by worker 0 (null until then). */
+    private volatile ScramSolver solver;
+    /** The best tour of solver found so far (null until the first plan). */
+    private int[] best;
+    /** Number of tours the workers have tried so far. */
+    private long tries;
+
+    /** Constructor: a planner for the scram of state, with its steps left, whose <br>
+     * workers threads (at least 1) plan for at most millis milliseconds. */
+    public AnytimeScramPlanner(ScramState state, long millis, int workers) {
+        this(state.currentNode(), state.getExit(), state.allNodes(), state.stepsLeft(), millis,
+            workers);
+    }
+
+    /** Constructor: a planner for a scram from node start to node exit within steps steps, <br>
+     * collecting the gold on nodes, whose workers threads (at least 1) plan for at most <br>
+     * millis milliseconds. <br>
+     * Precondition: the exit can be reached from start within steps steps. */
+    public AnytimeScramPlanner(Node start, Node exit, Collection<Node> nodes, int steps,
+        long millis, int workers) {
+        deadline= System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        toExit= new DistanceMatrix(Collections.singletonList(exit), 1);
+        // Copy nodes: worker 0 may still read it after the game has gone on.
+        List<Node> ns= new ArrayList<>(nodes);
+        done= new CountDownLatch(Math.max(1, workers));
+        // The workers already run in parallel: one thread for the distances.
+        start(workers, () -> new ScramSolver(start, exit, ns, steps, 1));
+    }
+
+    /** Constructor: a planner for the scram of solver s, whose workers threads (at least 1) <br>
+     * try to improve on tour (a tour of s, e.g. from s.plan()) for at most millis <br>
+     * milliseconds. The plan is never worse than tour. */
+    public AnytimeScramPlanner(ScramSolver s, int[] tour, long millis, int workers) {
+        deadline= System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        toExit= null;
+        solver= s;
+        best= tour;
+        done= new CountDownLatch(Math.max(1, workers));
+        start(workers, null);
+    }
+
+    /** Submit workers workers (at least 1) to POOL, worker 0 getting the solver from sup <br>
+     * (null if there is a solver already). */
+    private void start(int workers, Supplier<ScramSolver> sup) {
+        for (int w= 0; w < Math.max(1, workers); w++ ) {
+            int id= w;
+            tasks.add(POOL.submit(() -> work(id, sup)));
+        }
+    }
+
+    /** The work of worker id: worker 0 gets the solver from sup (if not null) and makes <br>
+     * its plan, then every worker perturbs the best tour so far until the planner stops. */
+    private void work(int id, Supplier<ScramSolver> sup) {
+        try {
+            if (id == 0 && sup != null) {
+                ScramSolver s= sup.get();
+                solver= s;
+                offer(s, s.plan());
+                // With no gold tile in reach there is nothing to improve.
+                if (s.keyCount() == 2) stopped= true;
+            }
+            Random rand= new Random(id);
+            while (!stopped && System.nanoTime() < deadline) {
+                ScramSolver s= solver;
+                int[] from= bestTour();
+                if (s == null || from == null) {
+                    Thread.sleep(1);
+                    continue;
+                }
+                offer(s, s.perturb(from, rand));
+            }
+        } catch (InterruptedException e) {
+            // follow() was called: stop.
+        } finally {
+            done.countDown();
+        }
+    }
+
+    /** Make tour of s the best tour if it is better than the best tour so far <br>
+     * (unless the planner has stopped: the plan may be in use). */
+    private synchronized void offer(ScramSolver s, int[] tour) {
+        if (stopped) return;
+        tries++ ;
+        if (best == null || s.better(tour, best)) best= tour;
+    }
+
+    /** Return the best tour so far, or null if there is none yet. */
+    private synchronized int[] bestTour() {
+        return best;
+    }
+
+    /** Wait until the deadline, or until the workers have stopped if that is earlier. */
+    public void awaitDeadline() throws InterruptedException {
+        done.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /** Return the gold on the best plan so far (0 while there is no solver). */
+    public synchronized int bestGold() {
+        return best == null ? 0 : solver.gold(best);
+    }
+
+    /** Return the number of tours tried so far. */
+    public synchronized long tries() {
+        return tries;
+    }
+
+    /** Stop the workers and move state along the best plan found so far: the best tour, <br>
+     * or a shortest path to the exit if there is no tour yet. The workers are interrupted <br>
+     * and stop soon after, without waiting for the end of their solver's work. <br>
+     * Precondition: state is the scram this planner was created for, not moved since. */
+    public void follow(ScramState state) {
+        int[] tour;
+        ScramSolver s;
+        synchronized (this) {
+            stopped= true;
+            tour= best;
+            s= solver;
+        }
+        for (Future<?> f : tasks) {
+            f.cancel(true);
+        }
+        if (tour != null) {
+            s.follow(state, tour);
+            return;
+        }
+        toExit.path(state.currentNode(), 0).follow(state);
+    }
+}
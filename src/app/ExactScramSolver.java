@@ -0,0 +1,147 @@
+package app;
+
+import java.util.Arrays;
+
+import game.ScramState;
+
+/** An instance finds the scram route that collects the most gold, provably, when there are <br>
+ * few gold tiles, and falls back to the heuristic ScramSolver.plan() when there are more.
+ *
+ * The exact plan is a Held-Karp dynamic program with a step budget over the key nodes of <br>
+ * a ScramSolver: for each set S of gold tiles and each tile t of S, the length of the <br>
+ * shortest tour from the start through all of S ending at t. A state is kept only if the <br>
+ * exit can still be reached from it within the budget (a later detour never makes the way <br>
+ * to the exit shorter). The best plan is then the set with the most gold whose tour fits. <br>
+ * Any walk collects the gold of the tiles it visits, and ordering those by first visit <br>
+ * gives a tour that is no longer, so no walk collects more gold than the exact plan. <br>
+ * With k gold tiles, it takes time O(2^k k^2) and memory 4 (k + 1) 2^k bytes, in int <br>
+ * arrays; k is at most the threshold given to the constructor. */
+public class ExactScramSolver {
+
+    /** Default largest number of gold tiles planned exactly. */
+    public static final int DEFAULT_MAX_GOLD= 16;
+
+    /** Largest threshold allowed (the dynamic program then takes about 90 MB). */
+    public static final int MAX_EXACT_GOLD= 20;
+
+    /** Marks a state that cannot be reached within the budget. */
+    private static final int UNREACHED= Integer.MAX_VALUE;
+
+    private final ScramSolver solver;
+    private final int maxGold;
+
+    /** Constructor: a solver for the scram of state, planning exactly with up to <br>
+     * DEFAULT_MAX_GOLD gold tiles. */
+    public ExactScramSolver(ScramState state) {
+        this(new ScramSolver(state), DEFAULT_MAX_GOLD);
+    }
+
+    /** Constructor: a solver that plans exactly over the key nodes of s if it has at most <br>
+     * max gold tiles, and uses s.plan() otherwise. <br>
+     * Throw an IllegalArgumentException if max is not in 0..MAX_EXACT_GOLD. */
+    public ExactScramSolver(ScramSolver s, int max) {
+        if (max < 0 || max > MAX_EXACT_GOLD) {
+            throw new IllegalArgumentException("max must be in 0.." + MAX_EXACT_GOLD + ": " + max);
+        }
+        solver= s;
+        maxGold= max;
+    }
+
+    /** Return the ScramSolver whose key nodes this solver plans over. */
+    public ScramSolver solver() {
+        return solver;
+    }
+
+    /** Return true iff plan() gives a plan that provably collects the most gold. */
+    public boolean isExact() {
+        return solver.coversAllGold() && solver.keyCount() - 2 <= maxGold;
+    }
+
+    /** Return a tour of the key nodes of solver(), as ScramSolver.plan() does: <br>
+     * the best one if isExact(), and the one of solver().plan() otherwise. */
+    public int[] plan() {
+        return isExact() ? planExactly() : solver.plan();
+    }
+
+    /** Move state along tour, a tour returned by plan() for state's scram. */
+    public void follow(ScramState state, int[] tour) {
+        solver.follow(state, tour);
+    }
+
+    /** Return the tour that collects the most gold in at most solver.budget() steps <br>
+     * (the shortest such tour if there are several). */
+    private int[] planExactly() {
+        int n= solver.keyCount();
+        int k= n - 2;
+        int exit= n - 1;
+        int budget= solver.budget();
+
+        // d[i * n + j] is the distance from key i to key j. Gold tile t is key t + 1.
+        int[] d= new int[n * n];
+        for (int i= 0; i < n; i++ ) {
+            for (int j= 0; j < n; j++ ) {
+                d[i * n + j]= solver.distance(i, j);
+            }
+        }
+
+        // len[S * k + t] is the length of a shortest tour from the start through the set S
+        // of gold tiles ending at t, or UNREACHED. goldOf[S] is the gold of S.
+        int states= 1 << k;
+        int[] len= new int[states * k];
+        Arrays.fill(len, UNREACHED);
+        int[] goldOf= new int[states];
+        for (int t= 0; t < k; t++ ) {
+            int dt= d[t + 1];
+            if ((long) dt + d[(t + 1) * n + exit] <= budget) len[(1 << t) * k + t]= dt;
+        }
+
+        int bestSet= 0;
+        int bestLast= -1;
+        int bestGold= 0;
+        int bestLen= d[exit];
+        for (int S= 1; S < states; S++ ) {
+            int low= Integer.numberOfTrailingZeros(S);
+            goldOf[S]= goldOf[S & S - 1] + solver.keyGold(low + 1);
+            for (int t= 0; t < k; t++ ) {
+                int l= len[S * k + t];
+                if (l == UNREACHED) continue;
+                int row= (t + 1) * n;
+                int total= l + d[row + exit];
+                if (goldOf[S] > bestGold || goldOf[S] == bestGold && total < bestLen) {
+                    bestSet= S;
+                    bestLast= t;
+                    bestGold= goldOf[S];
+                    bestLen= total;
+                }
+                for (int u= 0; u < k; u++ ) {
+                    if ((S & 1 << u) != 0) continue;
+                    int lu= l + d[row + u + 1];
+                    if ((long) lu + d[(u + 1) * n + exit] > budget) continue;
+                    int s= (S | 1 << u) * k + u;
+                    if (lu < len[s]) len[s]= lu;
+                }
+            }
+        }
+
+        // Follow the states back from the best one.
+        int[] tour= new int[Integer.bitCount(bestSet) + 2];
+        tour[tour.length - 1]= exit;
+        int S= bestSet;
+        int t= bestLast;
+        for (int p= tour.length - 2; p > 0; p-- ) {
+            tour[p]= t + 1;
+            int R= S & ~(1 << t);
+            int l= len[S * k + t];
+            int prev= -1;
+            for (int u= 0; R != 0 && prev < 0; u++ ) {
+                if ((R & 1 << u) != 0 && len[R * k + u] != UNREACHED &&
+                    len[R * k + u] + d[(u + 1) * n + t + 1] == l) {
+                    prev= u;
+                }
+            }
+            S= R;
+            t= prev;
+        }
+        return tour;
+    }
+}
@@ -0,0 +1,190 @@
+package app;
+
+import java.util.Arrays;
+
+import game.HuntState;
+
+/** An instance hunts for the orb by best-first search over the part of the cavern it has <br>
+ * discovered so far.
+ *
+ * Every tile it has stood on is visited: its neighbors are known. A tile seen as a <br>
+ * neighbor but not yet visited is on the frontier. At each step the engine picks the <br>
+ * frontier tile f with the least estimated cost d(f) + h(f), where d(f) is the number of <br>
+ * steps to reach f through visited tiles and h(f) its grid distance to the orb (of tiles <br>
+ * of equal cost, the one nearest the orb). It walks to f along a shortest known path and <br>
+ * visits it, until it stands on the orb.
+ *
+ * The search for f is a breadth-first search from the current tile over the visited <br>
+ * tiles. It stops as soon as no tile further away can be better: a frontier tile d steps <br>
+ * away costs at least d + the least h on the frontier, and a tile that ties in cost but is <br>
+ * further away is nearer the orb, so it is looked at too. <br>
+ * Tiles are numbered in the order they are discovered. All the bookkeeping is in int and <br>
+ * long arrays indexed by those numbers, reused from step to step, and the number of a <br>
+ * tile is looked up in an int array indexed by its id (ids are row * columns + column, <br>
+ * see HuntState.getColumnCount()). */
+public class HuntEngine {
+
+    /** Initial capacity, in tiles, of the arrays (they double as needed). */
+    private static final int INITIAL_TILES= 256;
+
+    /** Marks "no tile" in nbrs and parent. */
+    private static final int NONE= -1;
+
+    private final HuntState state;
+
+    /** Number of tiles discovered so far; they are numbered 0..count-1. */
+    private int count;
+    /** ids[t] is the id of tile t. */
+    private long[] ids;
+    /** h[t] is the grid distance from tile t to the orb. */
+    private int[] h;
+    /** nbrs[4t..4t+3] are the neighbors of visited tile t (NONE for unused slots). */
+    private int[] nbrs;
+    /** visited[t] is true iff tile t has been stood on. */
+    private boolean[] visited;
+
+    /** numberOf[id] is 1 + the number of the tile with id id, or 0 if it is not discovered. */
+    private final int[] numberOf;
+
+    /** frontierAt[k] is the number of frontier tiles with h = k. minFrontier is at most <br>
+     * the least such k with frontierAt[k] > 0. */
+    private int[] frontierAt= new int[INITIAL_TILES];
+    private int minFrontier;
+
+    /** Breadth-first search arrays: dist[t] and parent[t] are valid iff mark[t] == stamp. */
+    private int[] dist;
+    private int[] parent;
+    private int[] mark;
+    private int stamp;
+    private int[] queue;
+
+    /** Scratch arrays for neighbors(ids, distances) and for the route to walk. */
+    private final long[] nbrIds= new long[4];
+    private final int[] nbrDists= new int[4];
+    private int[] route= new int[16];
+
+    /** Constructor: an engine for the hunt of state, from its current location. */
+    public HuntEngine(HuntState state) {
+        this.state= state;
+        ids= new long[INITIAL_TILES];
+        h= new int[INITIAL_TILES];
+        nbrs= new int[4 * INITIAL_TILES];
+        visited= new boolean[INITIAL_TILES];
+        dist= new int[INITIAL_TILES];
+        parent= new int[INITIAL_TILES];
+        mark= new int[INITIAL_TILES];
+        queue= new int[INITIAL_TILES];
+        numberOf= new int[state.getRowCount() * state.getColumnCount()];
+    }
+
+    /** Walk to the orb and return, standing on it. */
+    public void run() {
+        int current= discover(state.currentLocation(), state.distanceToOrb());
+        visit(current);
+        while (h[current] != 0) {
+            int f= bestFrontier(current);
+            int n= 0;
+            for (int t= f; t != current; t= parent[t]) {
+                if (n == route.length) route= Arrays.copyOf(route, 2 * n);
+                route[n]= t;
+                n++ ;
+            }
+            for (int k= n - 1; k >= 0; k-- ) {
+                state.moveTo(ids[route[k]]);
+            }
+            current= f;
+            visit(current);
+        }
+    }
+
+    /** Return the frontier tile with the least d + h from tile current (the one nearest <br>
+     * the orb if tied), leaving in parent a shortest known path to it from current. */
+    private int bestFrontier(int current) {
+        stamp++ ;
+        mark[current]= stamp;
+        dist[current]= 0;
+        parent[current]= NONE;
+        queue[0]= current;
+        int head= 0;
+        int tail= 1;
+        int best= NONE;
+        int bestCost= Integer.MAX_VALUE;
+        while (head < tail) {
+            int u= queue[head];
+            head++ ;
+            int du= dist[u];
+            // A tile not reached yet is at least du + 1 away.
+            // It cannot cost less than best, nor tie with it nearer the orb.
+            if (best != NONE && du + 1 + minFrontier > bestCost) break;
+            for (int k= 4 * u; k < 4 * u + 4; k++ ) {
+                int w= nbrs[k];
+                if (w == NONE || mark[w] == stamp) continue;
+                mark[w]= stamp;
+                dist[w]= du + 1;
+                parent[w]= u;
+                if (visited[w]) {
+                    queue[tail]= w;
+                    tail++ ;
+                } else {
+                    int c= du + 1 + h[w];
+                    if (c < bestCost || c == bestCost && h[w] < h[best]) {
+                        best= w;
+                        bestCost= c;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Mark tile t, where Pollack now stands, visited and discover its neighbors. */
+    private void visit(int t) {
+        if (!visited[t]) {
+            visited[t]= true;
+            frontierAt[h[t]]-- ;
+        }
+        int n= state.neighbors(nbrIds, nbrDists);
+        for (int k= 0; k < n; k++ ) {
+            // discover may grow the arrays, so nbrs is indexed afterwards.
+            int w= discover(nbrIds[k], nbrDists[k]);
+            nbrs[4 * t + k]= w;
+        }
+        while (minFrontier < frontierAt.length && frontierAt[minFrontier] == 0) {
+            minFrontier++ ;
+        }
+    }
+
+    /** Return the number of the tile with id id and grid distance d to the orb, numbering <br>
+     * it (as a frontier tile) if it is new. */
+    private int discover(long id, int d) {
+        if (numberOf[(int) id] != 0) return numberOf[(int) id] - 1;
+
+        int t= count;
+        if (t == ids.length) grow();
+        count++ ;
+        ids[t]= id;
+        h[t]= d;
+        Arrays.fill(nbrs, 4 * t, 4 * t + 4, NONE);
+        numberOf[(int) id]= t + 1;
+
+        if (d >= frontierAt.length) {
+            frontierAt= Arrays.copyOf(frontierAt, Math.max(d + 1, 2 * frontierAt.length));
+        }
+        frontierAt[d]++ ;
+        if (d < minFrontier) minFrontier= d;
+        return t;
+    }
+
+    /** Double the capacity of the per-tile arrays. */
+    private void grow() {
+        int n= 2 * ids.length;
+        ids= Arrays.copyOf(ids, n);
+        h= Arrays.copyOf(h, n);
+        nbrs= Arrays.copyOf(nbrs, 4 * n);
+        visited= Arrays.copyOf(visited, n);
+        dist= Arrays.copyOf(dist, n);
+        parent= Arrays.copyOf(parent, n);
+        mark= Arrays.copyOf(mark, n);
+        queue= Arrays.copyOf(queue, n);
+    }
+}
@@ -0,0 +1,186 @@
+package app;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/** An instance is a min-heap or a max-heap of distinct int keys (e.g. node indices) <br>
+ * with priorities of type double, stored in parallel arrays instead of Element objects <br>
+ * and a HashMap. It keeps the contract of Heap: add, poll, peek and updatePriority <br>
+ * behave the same, and with arity 2 the values come out in exactly the same order. <br>
+ * With a larger arity (e.g. 4) the tree is shallower and the children of a node are <br>
+ * next to each other in memory, which makes bubbling down cheaper on large heaps. */
+public class IndexHeap {
+
+	/** Class Invariant: <br>
+	 * 1. keys[0..size-1] represents a complete d-ary tree, where d = arity. <br>
+	 * keys[0] is the root; <br>
+	 * For k > 0, (k-1)/d (using int division) is the index of the parent of keys[k]. <br>
+	 * For k >= 0, d*k+1 .. d*k+d are the indexes of the children of keys[k].
+	 *
+	 * 2. For k in 0..size-1, prios[k] is the priority of keys[k].
+	 *
+	 * 3. The keys in keys[0..size-1] are all different and >= 0.
+	 *
+	 * 4. For k in 1..size-1, <br>
+	 * .. if isMaxHeap, prios[k] <= (the priority of keys[k]'s parent),<br>
+	 * .. if !isMaxHeap, prios[k] >= (the priority of keys[k]'s parent).
+	 *
+	 * 5. For every key v, pos[v] = k if keys[k] = v for some k in 0..size-1, <br>
+	 * .. and pos[v] = -1 otherwise (keys >= pos.length are not in the heap). */
+	private final boolean isMaxHeap;
+	private final int arity;
+	private int[] keys;
+	private double[] prios;
+	private int[] pos;
+	private int size;
+
+	/** Constructor: an empty binary heap with room for keys 0..capacity-1 <br>
+	 * (larger keys make it grow). It is a max-heap iff isMax. */
+	public IndexHeap(int capacity, boolean isMax) {
+		this(capacity, isMax, 2);
+	}
+
+	/** Constructor: an empty heap in which every node has up to d children, with room <br>
+	 * for keys 0..capacity-1 (larger keys make it grow). It is a max-heap iff isMax. <br>
+	 * Precondition: d >= 2. */
+	public IndexHeap(int capacity, boolean isMax, int d) {
+		if (d < 2) throw new IllegalArgumentException("arity must be at least 2: " + d);
+		isMaxHeap= isMax;
+		arity= d;
+		capacity= Math.max(capacity, 1);
+		keys= new int[capacity];
+		prios= new double[capacity];
+		pos= new int[capacity];
+		Arrays.fill(pos, -1);
+	}
+
+	/** Return the size of this heap. */
+	public int size() {
+		return size;
+	}
+
+	/** Return true iff key v is in this heap. */
+	public boolean contains(int v) {
+		return v >= 0 && v < pos.length && pos[v] >= 0;
+	}
+
+	/** Return the priority of key v. <br>
+	 * Throw an IllegalArgumentException if v is not in the heap. */
+	public double priority(int v) {
+		if (!contains(v)) throw new IllegalArgumentException("v is not in the heap");
+		return prios[pos[v]];
+	}
+
+	/** Add key v with priority p to the heap. <br>
+	 * Throw an IllegalArgumentException if v is negative or already in the heap. */
+	public void add(int v, double p) {
+		if (v < 0) throw new IllegalArgumentException("v is negative");
+		if (v >= pos.length) {
+			int old= pos.length;
+			pos= Arrays.copyOf(pos, Math.max(2 * old, v + 1));
+			Arrays.fill(pos, old, pos.length, -1);
+		}
+		if (pos[v] >= 0) throw new IllegalArgumentException("v is already in the heap");
+		if (size == keys.length) {
+			keys= Arrays.copyOf(keys, 2 * size);
+			prios= Arrays.copyOf(prios, 2 * size);
+		}
+		keys[size]= v;
+		prios[size]= p;
+		pos[v]= size;
+		size= size + 1;
+		bubbleUp(size - 1);
+	}
+
+	/** If this is a min-heap, return the key with lowest priority. <br>
+	 * If this is a max-heap, return the key with highest priority. <br>
+	 * Throw a NoSuchElementException if the heap is empty. */
+	public int peek() {
+		if (size <= 0) throw new NoSuchElementException("heap is empty");
+		return keys[0];
+	}
+
+	/** If this is a min-heap, remove and return the key with lowest priority. <br>
+	 * If this is a max-heap, remove and return the key with highest priority. <br>
+	 * Throw a NoSuchElementException if the heap is empty. */
+	public int poll() {
+		if (size <= 0) throw new NoSuchElementException("heap is empty");
+		int v= keys[0];
+		swap(0, size - 1);
+		pos[v]= -1;
+		size= size - 1;
+		bubbleDown(0);
+		return v;
+	}
+
+	/** Change the priority of key v to p. <br>
+	 * Throw an IllegalArgumentException if v is not in the heap. */
+	public void updatePriority(int v, double p) {
+		if (!contains(v)) throw new IllegalArgumentException("v is not in the heap");
+		int h= pos[v];
+		double oldP= prios[h];
+		prios[h]= p;
+		int t= compareTo(p, oldP);
+		if (t == 0) return;
+		if (t < 0) bubbleDown(h);
+		else bubbleUp(h);
+	}
+
+	/** Remove all keys from this heap, keeping its arrays for reuse. <br>
+	 * This takes time proportional to the size of the heap, not to its capacity. */
+	public void clear() {
+		for (int k= 0; k < size; k++ ) {
+			pos[keys[k]]= -1;
+		}
+		size= 0;
+	}
+
+	/** Return 1 if priority p1 belongs above p2 in the heap, 0 if they are the same, <br>
+	 * and -1 if p1 belongs below p2 (as in Heap.compareTo). */
+	private int compareTo(double p1, double p2) {
+		if (p1 == p2) return 0;
+		if (isMaxHeap) { return p1 > p2 ? 1 : -1; }
+		return p1 < p2 ? 1 : -1;
+	}
+
+	/** Swap the keys (and priorities) at positions h and k. */
+	private void swap(int h, int k) {
+		int v= keys[h];
+		keys[h]= keys[k];
+		keys[k]= v;
+		double p= prios[h];
+		prios[h]= prios[k];
+		prios[k]= p;
+		pos[keys[h]]= h;
+		pos[keys[k]]= k;
+	}
+
+	/** Bubble keys[h] up the heap to its right place. */
+	private void bubbleUp(int h) {
+		while (h > 0) {
+			int p= (h - 1) / arity; // p is h's parent
+			if (compareTo(prios[h], prios[p]) <= 0) return;
+			swap(h, p);
+			h= p;
+		}
+	}
+
+	/** Bubble keys[h] down the heap to its right place. If several children could <br>
+	 * take its place (because their priorities are equal), choose the leftmost one. */
+	private void bubbleDown(int h) {
+		int k= arity * h + 1;
+		// Invariant: the class invariant is true except that perhaps keys[h]
+		// belongs below some of its children, and k is h's first child.
+		while (k < size) {
+			int uc= k;
+			int end= Math.min(k + arity, size);
+			for (int c= k + 1; c < end; c++ ) {
+				if (compareTo(prios[c], prios[uc]) > 0) uc= c;
+			}
+			if (compareTo(prios[h], prios[uc]) >= 0) return;
+			swap(h, uc);
+			h= uc;
+			k= arity * h + 1;
+		}
+	}
+}
@@ -8,12 +8,17 @@
  */
 package app;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import game.Edge;
+import game.GridGraph;
+import game.GridPath;
 import game.Node;
+import game.Tile;
 
 /** This class contains the shortest-path algorithm and other methods<br>
  * for a undirected graph. */
@@ -25,108 +30,334 @@ public class Path {
      * Example: for 5 hours, use 5 or 5.0 */
     public static double timeSpent= 10;
 
+    /** The search used by shortest(v, end, mode). All modes return a path of the <br>
+     * same (shortest) length, though not necessarily the same path. */
+    public enum Mode {
+        /** Dijkstra's algorithm from v until end is polled. */
+        DIJKSTRA,
+        /** A*: Dijkstra's algorithm with priority dist + the Manhattan distance to end. <br>
+         * Every edge joins adjacent tiles and has length at least 1, so the bound is <br>
+         * admissible and consistent. */
+        ASTAR,
+        /** Dijkstra's algorithm from v and from end at the same time, until the <br>
+         * two frontiers together cannot improve on the best path found. */
+        BIDIRECTIONAL;
+    }
+
+    /** expanded[m] is the number of nodes polled by searches in mode m so far. <br>
+     * A search counts in a local variable and adds its count once, when it ends. */
+    private static final AtomicLongArray expanded= new AtomicLongArray(Mode.values().length);
+
+    /** Return the number of nodes expanded (polled from a frontier) by all searches <br>
+     * in mode m since the start or since the last call of resetExpansions(). */
+    public static long expansions(Mode m) {
+        return expanded.get(m.ordinal());
+    }
+
+    /** Set the number of nodes expanded in every mode to 0. */
+    public static void resetExpansions() {
+        for (int i= 0; i < expanded.length(); i++ ) {
+            expanded.set(i, 0);
+        }
+    }
+
     /** Return the shortest path from node v to node end <br>
      * ---or the empty list if a path does not exist. <br>
      * Note: The empty list is NOT "null"; it is a list with 0 elements. */
     public static List<Node> shortest(Node v, Node end) {
+        return shortest(v, end, Mode.DIJKSTRA);
+    }
+
+    /** Return the shortest path from node v to node end, found using mode <br>
+     * ---or the empty list if a path does not exist. The list is a new list that the <br>
+     * caller may modify; shortestPath returns the path without copying it. */
+    public static List<Node> shortest(Node v, Node end, Mode mode) {
+        return new ArrayList<>(shortestPath(v, end, mode).asList());
+    }
+
+    /** Return the shortest path from node v to node end, found using mode <br>
+     * ---or an empty path if a path does not exist. */
+    public static GridPath shortestPath(Node v, Node end, Mode mode) {
+        switch (mode) {
+        case ASTAR:
+            return astar(v, end);
+        case BIDIRECTIONAL:
+            return bidirectional(v, end);
+        default:
+            return dijkstra(v, end);
+        }
+    }
+
+    /** Return the shortest path from v to end using Dijkstra's algorithm <br>
+     * ---or an empty path if a path does not exist. */
+    private static GridPath dijkstra(Node v, Node end) {
         /* TODO Implement this method.
          * Read the A6 assignment handout for all details and
          * be aware of changes announced on pinned Piazza note for Assignment A6.
          * Remember, the graph is undirected. */
 
-        Heap<Node> F= new Heap<>(false);
+        // F and map are indexed by the nodes' indices in their GridGraph g.
+        GridGraph g= v.getGridGraph();
 
-        /** map contains an entry for each node in F or S. <br>
+        /** map contains an entry for each node in F or S (none for the others). <br>
          * ... Thus, |map| = |F| + |S|.<br>
          * ... For each such node, map contains the shortest known distance<br>
          * ... to the node and the node's Backpointer on that shortest path. */
-        HashMap<Node, SF> map= new HashMap<>();
+        SF map= SF.of(g, 0);
+        IndexHeap F= map.F;
 
-        F.add(v, 0);
-        map.put(v, new SF(0, null));
+        F.add(v.getIndex(), 0);
+        map.put(v.getIndex(), 0, -1);
+        long polled= 0;
         // inv: See the A6 handout, together with def of F and map.
         while (F.size() != 0) {
-            Node f= F.poll();
+            Node f= g.node(F.poll());
+            polled++ ;
 
-            if (f == end) { return getPath(map, end); }
-            int fDist= map.get(f).dist;
+            if (f == end) {
+                expanded.addAndGet(Mode.DIJKSTRA.ordinal(), polled);
+                return getPath(map, end);
+            }
+            int fDist= map.dist[f.getIndex()];
 
             for (Edge e : f.getExits()) {// for each neighbor w of f
-                Node w= e.getOther(f);
+                int w= e.getOther(f).getIndex();
                 int newWdist= fDist + e.length;
-                SF wDB= map.get(w);
-                if (wDB == null) { // if w not in F or S
-                    map.put(w, new SF(newWdist, f));
+                if (!map.contains(w)) { // if w not in F or S
+                    map.put(w, newWdist, f.getIndex());
                     F.add(w, newWdist);
-                } else if (newWdist < wDB.dist) {
-                    wDB.dist= newWdist;
-                    wDB.bkptr= f;
+                } else if (newWdist < map.dist[w]) {
+                    map.put(w, newWdist, f.getIndex());
                     F.updatePriority(w, newWdist);
                 }
             }
         }
 
         // no path from v to end
-        return new LinkedList<>();
+        expanded.addAndGet(Mode.DIJKSTRA.ordinal(), polled);
+        return new GridPath(g, new int[0]);
+    }
+
+    /** Return the Manhattan distance between the tiles of nodes n and m, a lower bound <br>
+     * on the length of any path between them. */
+    private static int manhattan(Node n, Node m) {
+        Tile a= n.getTile();
+        Tile b= m.getTile();
+        return Math.abs(a.getRow() - b.getRow()) + Math.abs(a.getColumn() - b.getColumn());
     }
 
-    /** An instance contains information about a node: <br>
-     * the Distance of this node from the start node and <br>
-     * its Backpointer: the previous node on a shortest path <br>
-     * from the start node to this node. */
+    /** Return the shortest path from v to end using A* with the Manhattan distance <br>
+     * to end as the bound ---or an empty path if a path does not exist. */
+    private static GridPath astar(Node v, Node end) {
+        GridGraph g= v.getGridGraph();
+        // Same as dijkstra, but F's priorities are dist + manhattan(w, end). Because
+        // the bound is consistent, a polled node never gets a shorter distance again.
+        SF map= SF.of(g, 0);
+        IndexHeap F= map.F;
+
+        F.add(v.getIndex(), manhattan(v, end));
+        map.put(v.getIndex(), 0, -1);
+        long polled= 0;
+        while (F.size() != 0) {
+            Node f= g.node(F.poll());
+            polled++ ;
+
+            if (f == end) {
+                expanded.addAndGet(Mode.ASTAR.ordinal(), polled);
+                return getPath(map, end);
+            }
+            int fDist= map.dist[f.getIndex()];
+
+            for (Edge e : f.getExits()) {
+                Node w= e.getOther(f);
+                int wi= w.getIndex();
+                int newWdist= fDist + e.length;
+                if (!map.contains(wi)) {
+                    map.put(wi, newWdist, f.getIndex());
+                    F.add(wi, newWdist + manhattan(w, end));
+                } else if (newWdist < map.dist[wi]) {
+                    map.put(wi, newWdist, f.getIndex());
+                    F.updatePriority(wi, newWdist + manhattan(w, end));
+                }
+            }
+        }
+        expanded.addAndGet(Mode.ASTAR.ordinal(), polled);
+        return new GridPath(g, new int[0]);
+    }
+
+    /** Return the shortest path from v to end using bidirectional Dijkstra <br>
+     * ---or an empty path if a path does not exist. */
+    private static GridPath bidirectional(Node v, Node end) {
+        GridGraph g= v.getGridGraph();
+        // Forward search from v (F, map) and backward search from end (B, bmap).
+        // best is the length of the shortest path found so far, through node meet.
+        SF map= SF.of(g, 0);
+        SF bmap= SF.of(g, 1);
+        IndexHeap F= map.F;
+        IndexHeap B= bmap.F;
+        F.add(v.getIndex(), 0);
+        map.put(v.getIndex(), 0, -1);
+        B.add(end.getIndex(), 0);
+        bmap.put(end.getIndex(), 0, -1);
+        int best= v == end ? 0 : Integer.MAX_VALUE;
+        Node meet= v == end ? v : null;
+        long polled= 0;
+
+        // inv: every path shorter than best goes through a node of F or B. So once
+        // the smallest priorities of F and B add up to best, no path is shorter.
+        while (F.size() != 0 && B.size() != 0 &&
+            (long) map.dist[F.peek()] + bmap.dist[B.peek()] < best) {
+            // Expand the smaller frontier: it is usually the cheaper one.
+            boolean forward= F.size() <= B.size();
+            SF m= forward ? map : bmap;
+            SF other= forward ? bmap : map;
+            IndexHeap H= m.F;
+
+            Node f= g.node(H.poll());
+            polled++ ;
+            int fDist= m.dist[f.getIndex()];
+            for (Edge e : f.getExits()) {
+                Node w= e.getOther(f);
+                int wi= w.getIndex();
+                int newWdist= fDist + e.length;
+                if (!m.contains(wi)) {
+                    m.put(wi, newWdist, f.getIndex());
+                    H.add(wi, newWdist);
+                } else if (newWdist < m.dist[wi]) {
+                    m.put(wi, newWdist, f.getIndex());
+                    H.updatePriority(wi, newWdist);
+                } else {
+                    continue;
+                }
+                if (other.contains(wi) && newWdist + other.dist[wi] < best) {
+                    best= newWdist + other.dist[wi];
+                    meet= w;
+                }
+            }
+        }
+
+        expanded.addAndGet(Mode.BIDIRECTIONAL.ordinal(), polled);
+        if (meet == null) return new GridPath(g, new int[0]);
+        // The backward backpointers lead from meet to end.
+        return getPath(map, meet).concat(getPath(bmap, meet, true));
+    }
+
+    /** The SFs of the searches of each thread: scratch.get()[0] for a search from the <br>
+     * start node, scratch.get()[1] for the backward search of bidirectional. They are <br>
+     * softly reachable, so the collector may take back those of a large graph. */
+    private static final ThreadLocal<SoftReference<SF[]>> scratch=
+        ThreadLocal.withInitial(() -> new SoftReference<>(new SF[2]));
+
+    /** An instance contains information about the nodes of one search: <br>
+     * the Distance of each node from the start node and <br>
+     * its Backpointer: the index of the previous node on a shortest path <br>
+     * from the start node to this node, and the search's frontier F. <br>
+     * Its arrays are indexed by the nodes' indices in their GridGraph and are reused <br>
+     * by the searches of one thread: dist[i] and bkptr[i] are meaningful only if <br>
+     * mark[i] == stamp, so starting a search does not touch them. */
     private static class SF {
-        /** shortest known distance from the start node to this one. */
-        private int dist;
-        /** backpointer on path (with shortest known distance) from start node to this one */
-        private Node bkptr;
-
-        /** Constructor: an instance with dist d from the start node and<br>
-         * backpointer p. */
-        private SF(int d, Node p) {
-            dist= d;     // Distance from start node to this one.
-            bkptr= p;    // Backpointer on the path (null if start node)
+        /** The frontier of the search. */
+        private final IndexHeap F;
+        /** shortest known distance from the start node to node i. */
+        private final int[] dist;
+        /** backpointer on path (with shortest known distance) from start node to node i <br>
+         * (-1 if start node) */
+        private final int[] bkptr;
+        /** mark[i] == stamp iff node i is in F or S. */
+        private final int[] mark;
+        private int stamp;
+
+        /** Constructor: an instance for graphs of at most n nodes. */
+        private SF(int n) {
+            F= new IndexHeap(n, false);
+            dist= new int[n];
+            bkptr= new int[n];
+            mark= new int[n];
+        }
+
+        /** Return SF k (0 or 1) of this thread, ready for a new search in g. */
+        private static SF of(GridGraph g, int k) {
+            SF[] sfs= scratch.get().get();
+            if (sfs == null) {
+                sfs= new SF[2];
+                scratch.set(new SoftReference<>(sfs));
+            }
+            SF sf= sfs[k];
+            if (sf == null || sf.mark.length < g.size()) {
+                sf= new SF(g.size());
+                sfs[k]= sf;
+            }
+            sf.F.clear();
+            if (sf.stamp == Integer.MAX_VALUE) {
+                Arrays.fill(sf.mark, 0);
+                sf.stamp= 0;
+            }
+            sf.stamp++ ;
+            return sf;
+        }
+
+        /** Return true iff node i is in F or S. */
+        private boolean contains(int i) {
+            return mark[i] == stamp;
+        }
+
+        /** Give node i distance d and backpointer p, adding it to F or S if needed. */
+        private void put(int i, int d, int p) {
+            mark[i]= stamp;
+            dist[i]= d;
+            bkptr[i]= p;
         }
 
         /** return a representation of this instance. */
         @Override
         public String toString() {
-            return "dist " + dist + ", bckptr " + bkptr;
+            return "search " + stamp + " of " + F.size() + " frontier nodes";
         }
     }
 
     /** Return the path from the start node to node end.<br>
      * Precondition: SFdata contains all the necessary information about<br>
      * ............. the path. */
-    public static List<Node> getPath(HashMap<Node, SF> SFdata, Node end) {
-        List<Node> path= new LinkedList<>();
-        Node p= end;
-        // invariant: All the nodes from p's successor to the end are in
-        // path, in reverse order.
-        while (p != null) {
-            path.add(0, p);
-            p= SFdata.get(p).bkptr;
+    private static GridPath getPath(SF SFdata, Node end) {
+        return getPath(SFdata, end, false);
+    }
+
+    /** Return the path from the start node to node end, or from end to the start node <br>
+     * if reversed. <br>
+     * Precondition: SFdata contains all the necessary information about<br>
+     * ............. the path. */
+    private static GridPath getPath(SF SFdata, Node end, boolean reversed) {
+        int n= 0;
+        for (int p= end.getIndex(); p != -1; p= SFdata.bkptr[p]) {
+            n++ ;
+        }
+        int[] ids= new int[n];
+        int k= reversed ? 0 : n - 1;
+        // invariant: All the nodes from p's successor to the end are in ids[k+1..n-1]
+        // (or ids[0..k-1] in reverse order if reversed).
+        for (int p= end.getIndex(); p != -1; p= SFdata.bkptr[p]) {
+            ids[k]= p;
+            k= reversed ? k + 1 : k - 1;
         }
-        return path;
+        return new GridPath(end.getGridGraph(), ids);
     }
 
     /** Return the sum of the weights of the edges on path pa. <br>
      * Precondition: pa contains at least 1 node. <br>
      * If 1 node, it's a path of length 0, i.e. with no edges. */
     public static int pathSum(List<Node> pa) {
-        synchronized (pa) {
-            Node v= null;
-            int sum= 0;
-            // invariant: if v is null, n is the first node of the path.<br>
-            // ......... if v is not null, v is the predecessor of n on the path.
-            // sum = sum of weights on edges from first node to v
-            for (Node n : pa) {
-                if (v != null) {
-                    sum= sum + v.getEdge(n).length;
-                }
-                v= n;
+        Node v= null;
+        int sum= 0;
+        // invariant: if v is null, n is the first node of the path.<br>
+        // ......... if v is not null, v is the predecessor of n on the path.
+        // sum = sum of weights on edges from first node to v
+        for (Node n : pa) {
+            if (v != null) {
+                sum= sum + v.getEdge(n).length;
             }
-            return sum;
+            v= n;
         }
+        return sum;
     }
 
 }
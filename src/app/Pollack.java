@@ -1,12 +1,10 @@
 package app;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
-import game.Edge;
 import game.HuntState;
 import game.Hunter;
 import game.Node;
@@ -16,6 +14,80 @@ import game.ScramState;
 /** A solution with huntOrb optimized and scram getting out as fast as possible. */
 public class Pollack extends Hunter {
 
+    /** The choices a Pollack makes in huntOrb and scram. A Pollack copies them when it is <br>
+     * created, so changing a Settings afterwards does not change the Pollacks made from it, <br>
+     * and games played at the same time can use different settings. */
+    public static class Settings {
+        /** The search scram uses to find the shortest path to the exit when it does not <br>
+         * plan. Every mode gives a path of the same length, but possibly not the same path. */
+        public Path.Mode shortestMode= Path.Mode.DIJKSTRA;
+
+        /** true iff huntOrb searches with a HuntEngine; if false, it walks a depth-first <br>
+         * search toward the orb (dfs). */
+        public boolean frontierHunt= true;
+
+        /** true iff scram plans a route through gold tiles with a ScramSolver; <br>
+         * if false, it just walks a shortest path to the exit. */
+        public boolean planScram= true;
+
+        /** Largest number of gold tiles for which scram (if planScram) plans the route that <br>
+         * provably collects the most gold, with an ExactScramSolver; with more gold tiles it <br>
+         * takes the ScramSolver plan. At most ExactScramSolver.MAX_EXACT_GOLD. */
+        public int exactScramMaxGold= ExactScramSolver.DEFAULT_MAX_GOLD;
+
+        /** If positive (and planScram), scram plans with an AnytimeScramPlanner for this <br>
+         * many milliseconds to improve on the first ScramSolver plan, unless the <br>
+         * ExactScramSolver plan is exact: a longer time usually gives more gold. <br>
+         * It must stay well below GameState.SC_TIMEOUT. */
+        public long scramPlanMillis= 0;
+
+        /** Number of worker threads of the AnytimeScramPlanner. */
+        public int scramPlanWorkers= Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        /** Number of threads the ScramSolver computes its distances with: 1 when games <br>
+         * are played in parallel already (see DistanceMatrix). */
+        public int scramThreads= Runtime.getRuntime().availableProcessors();
+    }
+
+    private final Path.Mode shortestMode;
+    private final boolean frontierHunt;
+    private final boolean planScram;
+    private final int exactScramMaxGold;
+    private final long scramPlanMillis;
+    private final int scramPlanWorkers;
+    private final int scramThreads;
+
+    /** The neighbors of the tiles on the current dfs path: the call at depth d keeps <br>
+     * its neighbors in elements 4d..4d+3, so no call allocates arrays of its own. <br>
+     * The arrays double when the path gets deeper. */
+    private long[] dfsIds= new long[64];
+    private int[] dfsDists= new int[64];
+    /** Scratch arrays for neighbors(ids, distances). */
+    private final long[] nbrIds= new long[4];
+    private final int[] nbrDists= new int[4];
+
+    /** Constructor: a Pollack with the default settings. */
+    public Pollack() {
+        this(new Settings());
+    }
+
+    /** Constructor: a Pollack with settings s (copied). <br>
+     * Throw an IllegalArgumentException if s.exactScramMaxGold is not in <br>
+     * 0..ExactScramSolver.MAX_EXACT_GOLD. */
+    public Pollack(Settings s) {
+        if (s.exactScramMaxGold < 0 || s.exactScramMaxGold > ExactScramSolver.MAX_EXACT_GOLD) {
+            throw new IllegalArgumentException("exactScramMaxGold must be in 0.." +
+                ExactScramSolver.MAX_EXACT_GOLD + ": " + s.exactScramMaxGold);
+        }
+        shortestMode= s.shortestMode;
+        frontierHunt= s.frontierHunt;
+        planScram= s.planScram;
+        exactScramMaxGold= s.exactScramMaxGold;
+        scramPlanMillis= s.scramPlanMillis;
+        scramPlanWorkers= s.scramPlanWorkers;
+        scramThreads= s.scramThreads;
+    }
+
     /** Get to the orb in as few steps as possible. <br>
      * Once you get there, you must return from the function in order to pick it up. <br>
      * If you continue to move after finding the orb rather than returning, it will not count.<br>
@@ -42,6 +114,10 @@ public class Pollack extends Hunter {
     @Override
     public void huntOrb(HuntState state) {
         // TODO 1: Get the orb
+        if (frontierHunt) {
+            new HuntEngine(state).run();
+            return;
+        }
         Set<Long> visited= new HashSet<>();
         dfs(state, visited);
 
@@ -67,19 +143,36 @@ public class Pollack extends Hunter {
 
     }
 
+    /** Walk from tile t towards the orb, always moving to the unvisited neighbor <br>
+     * closest to the orb and backtracking when there is none. <br>
+     * Precondition: t is not visited. */
     public void dfs(HuntState t, Set<Long> visited) {
+        dfs(t, visited, 0);
+    }
+
+    /** Same as dfs(t, visited), for the call at depth depth of the recursion. */
+    private void dfs(HuntState t, Set<Long> visited, int depth) {
         long id= t.currentLocation();
         visited.add(id);
         if (t.distanceToOrb() == 0) { return; }
 
-        for (NodeStatus w : t.neighbors()) {
+        int base= 4 * depth;
+        if (base + 4 > dfsIds.length) {
+            dfsIds= Arrays.copyOf(dfsIds, 2 * dfsIds.length);
+            dfsDists= Arrays.copyOf(dfsDists, 2 * dfsDists.length);
+        }
+        // Deeper calls may replace the arrays, so they are read through the fields.
+        int n= t.neighbors(nbrIds, nbrDists);
+        System.arraycopy(nbrIds, 0, dfsIds, base, n);
+        System.arraycopy(nbrDists, 0, dfsDists, base, n);
+        for (int k= 0; k < n; k++ ) {
             long wid= 0;
             int shortestDist= Integer.MAX_VALUE;
-            for (NodeStatus w2 : t.neighbors()) {
-                if (!visited.contains(w2.getId())) {
-                    if (w2.getDistanceToTarget() < shortestDist) {
-                        shortestDist= w2.getDistanceToTarget();
-                        wid= w2.getId();
+            for (int k2= base; k2 < base + n; k2++ ) {
+                if (!visited.contains(dfsIds[k2])) {
+                    if (dfsDists[k2] < shortestDist) {
+                        shortestDist= dfsDists[k2];
+                        wid= dfsIds[k2];
                     }
                 }
             }
@@ -88,7 +181,7 @@ public class Pollack extends Hunter {
                 return;
             } else {
                 t.moveTo(wid);
-                dfs(t, visited);
+                dfs(t, visited, depth + 1);
                 if (t.distanceToOrb() == 0) { return; }
                 t.moveTo(id);
             }
@@ -124,116 +217,40 @@ public class Pollack extends Hunter {
     @Override
     public void scram(ScramState state) {
         // TODO 2: Get out of the cavern before it collapses, picking up gold along the way
-        Node start= state.currentNode();
-        Node exit= state.getExit();
-        List<Node> path= new LinkedList<>();
-
-        path= shortest(start, exit);
-
-        path.remove(0);
-        for (Node i : path) {
-            state.moveTo(i);
+        if (planScram) {
+            ExactScramSolver solver= new ExactScramSolver(new ScramSolver(state, scramThreads),
+                exactScramMaxGold);
+            int[] tour= solver.plan();
+            // No planner can beat an exact plan.
+            if (solver.isExact() || scramPlanMillis <= 0) {
+                solver.follow(state, tour);
+                return;
+            }
+            AnytimeScramPlanner planner= new AnytimeScramPlanner(solver.solver(), tour,
+                scramPlanMillis, scramPlanWorkers);
+            try {
+                planner.awaitDeadline();
+            } catch (InterruptedException e) {
+                // Commit to the best plan so far.
+            }
+            planner.follow(state);
+            return;
         }
 
+        Path.shortestPath(state.currentNode(), state.getExit(), shortestMode).follow(state);
     }
 
     /** Return the shortest path from node v to node end <br>
      * ---or the empty list if a path does not exist. <br>
      * Note: The empty list is NOT "null"; it is a list with 0 elements. */
     public static List<Node> shortest(Node v, Node end) {
-
-        Heap<Node> F= new Heap<>(false);
-
-        /** map contains an entry for each node in F or S. <br>
-         * ... Thus, |map| = |F| + |S|.<br>
-         * ... For each such node, map contains the shortest known distance<br>
-         * ... to the node and the node's Backpointer on that shortest path. */
-        HashMap<Node, SF> map= new HashMap<>();
-
-        F.add(v, 0);
-        map.put(v, new SF(0, null));
-        // inv: See the A6 handout, together with def of F and map.
-        while (F.size() != 0) {
-            Node f= F.poll();
-
-            if (f == end) { return getPath(map, end); }
-            int fDist= map.get(f).dist;
-
-            for (Edge e : f.getExits()) {// for each neighbor w of f
-                Node w= e.getOther(f);
-                int newWdist= fDist + e.length;
-                SF wDB= map.get(w);
-                if (wDB == null) { // if w not in F or S
-                    map.put(w, new SF(newWdist, f));
-                    F.add(w, newWdist);
-                } else if (newWdist < wDB.dist) {
-                    wDB.dist= newWdist;
-                    wDB.bkptr= f;
-                    F.updatePriority(w, newWdist);
-                }
-            }
-        }
-
-        // no path from v to end
-        return new LinkedList<>();
-    }
-
-    /** An instance contains information about a node: <br>
-     * the Distance of this node from the start node and <br>
-     * its Backpointer: the previous node on a shortest path <br>
-     * from the start node to this node. */
-    private static class SF {
-        /** shortest known distance from the start node to this one. */
-        private int dist;
-        /** backpointer on path (with shortest known distance) from start node to this one */
-        private Node bkptr;
-
-        /** Constructor: an instance with dist d from the start node and<br>
-         * backpointer p. */
-        private SF(int d, Node p) {
-            dist= d;     // Distance from start node to this one.
-            bkptr= p;    // Backpointer on the path (null if start node)
-        }
-
-        /** return a representation of this instance. */
-        @Override
-        public String toString() {
-            return "dist " + dist + ", bckptr " + bkptr;
-        }
-    }
-
-    /** Return the path from the start node to node end.<br>
-     * Precondition: SFdata contains all the necessary information about<br>
-     * ............. the path. */
-    public static List<Node> getPath(HashMap<Node, SF> SFdata, Node end) {
-        List<Node> path= new LinkedList<>();
-        Node p= end;
-        // invariant: All the nodes from p's successor to the end are in
-        // path, in reverse order.
-        while (p != null) {
-            path.add(0, p);
-            p= SFdata.get(p).bkptr;
-        }
-        return path;
+        return Path.shortest(v, end);
     }
 
     /** Return the sum of the weights of the edges on path pa. <br>
      * Precondition: pa contains at least 1 node. <br>
      * If 1 node, it's a path of length 0, i.e. with no edges. */
     public static int pathSum(List<Node> pa) {
-        synchronized (pa) {
-            Node v= null;
-            int sum= 0;
-            // invariant: if v is null, n is the first node of the path.<br>
-            // ......... if v is not null, v is the predecessor of n on the path.
-            // sum = sum of weights on edges from first node to v
-            for (Node n : pa) {
-                if (v != null) {
-                    sum= sum + v.getEdge(n).length;
-                }
-                v= n;
-            }
-            return sum;
-        }
+        return Path.pathSum(pa);
     }
 }
@@ -0,0 +1,397 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import game.DistanceMatrix;
+import game.GridGraph;
+import game.Node;
+import game.ScramState;
+
+/** An instance plans a scram as a budgeted orienteering problem: starting at the current <br>
+ * node, visit gold tiles so as to collect as much gold as possible, and end at the exit <br>
+ * within the steps left.
+ *
+ * The constructor computes a DistanceMatrix of the key nodes (the start, the gold tiles <br>
+ * and the exit) to get the distances between key nodes. plan() builds a tour of key <br>
+ * nodes by greedy insertion (most gold per extra step first), shortens it by local search <br>
+ * (2-opt and or-opt) and inserts more gold tiles in the steps saved, until neither helps. <br>
+ * No tour is ever longer than the budget, so the exit can always be reached: when no gold <br>
+ * tile is within reach the plan is a shortest path from the start to the exit. <br>
+ * Planning stops early, with a tour that still fits, when the calling thread is <br>
+ * interrupted. <br>
+ * Once constructed, a solver may be used by several threads, except for plan(). */
+public class ScramSolver {
+
+    /** Maximum number of gold tiles that are key nodes (the ones with the most gold). */
+    public static final int MAX_GOLD_KEYS= 1024;
+
+    /** Maximum number of next hops in the DistanceMatrix, one per key node and tile. <br>
+     * On a large cavern it lowers the number of gold tiles that are key nodes. */
+    public static final int MAX_NEXT_HOPS= 1 << 24;
+
+    /** The graph of the cavern. */
+    private final GridGraph g;
+
+    /** keys[0] is the start, keys[1..n-2] are the gold tiles and keys[n-1] is the exit, <br>
+     * as indices in g, where n = keys.length. */
+    private final int[] keys;
+    /** gold[i] is the gold on keys[i] when the solver was created (0 for the start). */
+    private final int[] gold;
+    /** dist[i][j] is the length of a shortest path from keys[i] to keys[j]. */
+    private final int[][] dist;
+    /** The distances and next hops between key nodes, key node i being node i of it. */
+    private final DistanceMatrix matrix;
+
+    /** The number of steps a tour may take. */
+    private final int budget;
+
+    /** true iff every gold tile (other than the start and exit) is a key node. */
+    private final boolean allGold;
+
+    /** Time spent by the constructor and by plan() so far, in nanoseconds. */
+    private long planningNanos;
+
+    /** Constructor: a solver for the scram of state, with its steps left as budget. */
+    public ScramSolver(ScramState state) {
+        this(state, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Constructor: same as ScramSolver(state), but computing the distances with at most <br>
+     * threads threads (see DistanceMatrix): 1 when the caller already runs in parallel <br>
+     * with other games or solvers. */
+    public ScramSolver(ScramState state, int threads) {
+        this(state.currentNode(), state.getExit(), state.allNodes(), state.stepsLeft(), threads);
+    }
+
+    /** Constructor: a solver for a scram from node start to node exit within steps steps, <br>
+     * collecting the gold on nodes. <br>
+     * Throw an IllegalStateException if the calling thread is interrupted meanwhile. <br>
+     * Precondition: the exit can be reached from start within steps steps. */
+    public ScramSolver(Node start, Node exit, Collection<Node> nodes, int steps) {
+        this(start, exit, nodes, steps, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Constructor: same as ScramSolver(start, exit, nodes, steps), but computing the <br>
+     * distances with at most threads threads. */
+    public ScramSolver(Node start, Node exit, Collection<Node> nodes, int steps, int threads) {
+        long t0= System.nanoTime();
+        g= start.getGridGraph();
+        budget= steps;
+
+        // The gold tiles with the most gold first, then by index, so plans do not depend
+        // on the order of nodes.
+        List<Node> golds= new ArrayList<>();
+        for (Node v : nodes) {
+            if (v.getTile().gold() > 0 && v != start && v != exit) golds.add(v);
+        }
+        golds.sort((a, b) -> a.getTile().gold() != b.getTile().gold() ?
+            b.getTile().gold() - a.getTile().gold() : a.getIndex() - b.getIndex());
+        int maxGold= Math.min(MAX_GOLD_KEYS, Math.max(0, MAX_NEXT_HOPS / g.size() - 2));
+        allGold= golds.size() <= maxGold;
+        if (!allGold) golds= golds.subList(0, maxGold);
+
+        List<Node> keyNodes= new ArrayList<>(golds.size() + 2);
+        keyNodes.add(start);
+        keyNodes.addAll(golds);
+        keyNodes.add(exit);
+        int n= keyNodes.size();
+        keys= new int[n];
+        gold= new int[n];
+        for (int i= 0; i < n; i++ ) {
+            keys[i]= keyNodes.get(i).getIndex();
+            if (i > 0) gold[i]= keyNodes.get(i).getTile().gold();
+        }
+
+        matrix= new DistanceMatrix(keyNodes, threads);
+        dist= new int[n][n];
+        for (int i= 0; i < n; i++ ) {
+            for (int j= 0; j < n; j++ ) {
+                dist[i][j]= matrix.distance(i, j);
+            }
+        }
+        planningNanos+= System.nanoTime() - t0;
+    }
+
+    /** Return the number of key nodes: the start, the gold tiles considered and the exit. */
+    public int keyCount() {
+        return keys.length;
+    }
+
+    /** Return true iff every gold tile other than the start and the exit is a key node. */
+    public boolean coversAllGold() {
+        return allGold;
+    }
+
+    /** Return the length of a shortest path from key node i to key node j. */
+    public int distance(int i, int j) {
+        return dist[i][j];
+    }
+
+    /** Return the gold on key node i when the solver was created. */
+    public int keyGold(int i) {
+        return gold[i];
+    }
+
+    /** Return the number of steps a tour may take. */
+    public int budget() {
+        return budget;
+    }
+
+    /** Return the time spent planning so far (building the distances and running plan()), <br>
+     * in nanoseconds. */
+    public long planningNanos() {
+        return planningNanos;
+    }
+
+    /** Return a tour: the key nodes to visit, as positions in 0..keyCount()-1, <br>
+     * starting with 0 (the start) and ending with keyCount()-1 (the exit). <br>
+     * Its length is at most budget(). */
+    public int[] plan() {
+        long t0= System.nanoTime();
+        int[] tour= { 0, keys.length - 1 };
+        boolean changed= true;
+        while (changed && !interrupted()) {
+            int[] t= insertGreedily(tour, null);
+            t= shorten(t);
+            changed= t.length > tour.length || length(t) < length(tour);
+            tour= t;
+        }
+        planningNanos+= System.nanoTime() - t0;
+        return tour;
+    }
+
+    /** Return a tour found from tour, a tour returned by plan() or perturb(), by removing <br>
+     * a random run of its gold tiles and then inserting gold tiles and shortening as <br>
+     * plan() does, but choosing among insertions with some randomness from rand. <br>
+     * It may be worse than tour; iterating it from the best tour so far explores tours <br>
+     * that plan() does not find. Its length is at most budget(). */
+    public int[] perturb(int[] tour, Random rand) {
+        int golds= tour.length - 2;
+        int[] t= tour;
+        if (golds > 0) {
+            int m= 1 + rand.nextInt(Math.max(1, golds / 4));
+            int i= 1 + rand.nextInt(golds - m + 1);
+            t= new int[tour.length - m];
+            System.arraycopy(tour, 0, t, 0, i);
+            System.arraycopy(tour, i + m, t, i, tour.length - i - m);
+        }
+        boolean changed= true;
+        while (changed && !interrupted()) {
+            int[] u= shorten(insertGreedily(t, rand));
+            changed= u.length > t.length || length(u) < length(t);
+            t= u;
+        }
+        return t;
+    }
+
+    /** Return true iff tour a collects more gold than tour b, or the same gold in fewer <br>
+     * steps. */
+    public boolean better(int[] a, int[] b) {
+        int ga= gold(a);
+        int gb= gold(b);
+        return ga > gb || ga == gb && length(a) < length(b);
+    }
+
+    /** Return the length of tour (a long: the budget may be as large as an int allows). */
+    public long length(int[] tour) {
+        long len= 0;
+        for (int k= 1; k < tour.length; k++ ) {
+            len+= dist[tour[k - 1]][tour[k]];
+        }
+        return len;
+    }
+
+    /** Return the gold on the key nodes of tour (when the solver was created). */
+    public int gold(int[] tour) {
+        int sum= 0;
+        for (int i : tour) {
+            sum+= gold[i];
+        }
+        return sum;
+    }
+
+    /** Return tour with gold tiles inserted one at a time, each time the one with the <br>
+     * most gold per extra step at its cheapest position, as long as one fits in the budget. <br>
+     * If rand is not null, each gold per extra step is first scaled by a random factor <br>
+     * in 0.75..1.25. */
+    private int[] insertGreedily(int[] tour, Random rand) {
+        int n= keys.length;
+        boolean[] in= new boolean[n];
+        for (int i : tour) {
+            in[i]= true;
+        }
+        int[] t= Arrays.copyOf(tour, n);
+        int size= tour.length;
+        long len= length(tour);
+
+        // For each key c not in t, inserting c just after key after[c] costs extra[c] steps,
+        // the least over all positions. An insertion changes only two edges of t, so only
+        // the keys whose cheapest edge it breaks need to look at the whole tour again.
+        int[] extra= new int[n];
+        int[] after= new int[n];
+        for (int c= 1; c < n - 1; c++ ) {
+            if (!in[c]) cheapestPosition(t, size, c, extra, after);
+        }
+        while (true) {
+            int best= -1;
+            double bestRatio= -1;
+            for (int c= 1; c < n - 1; c++ ) {
+                if (in[c] || dist[0][c] == Integer.MAX_VALUE || extra[c] > budget - len) continue;
+                double ratio= gold[c] / (extra[c] + 1.0);
+                if (rand != null) ratio*= 0.75 + 0.5 * rand.nextDouble();
+                if (ratio > bestRatio) {
+                    best= c;
+                    bestRatio= ratio;
+                }
+            }
+            if (best < 0 || interrupted()) return Arrays.copyOf(t, size);
+
+            int p= 1;
+            while (t[p - 1] != after[best]) {
+                p++ ;
+            }
+            int a= t[p - 1];
+            int b= t[p];
+            System.arraycopy(t, p, t, p + 1, size - p);
+            t[p]= best;
+            size++ ;
+            len+= extra[best];
+            in[best]= true;
+
+            for (int c= 1; c < n - 1; c++ ) {
+                if (in[c]) continue;
+                if (after[c] == a) {
+                    cheapestPosition(t, size, c, extra, after);
+                    continue;
+                }
+                int e1= dist[a][c] + dist[c][best] - dist[a][best];
+                int e2= dist[best][c] + dist[c][b] - dist[best][b];
+                if (e1 < extra[c]) {
+                    extra[c]= e1;
+                    after[c]= a;
+                }
+                if (e2 < extra[c]) {
+                    extra[c]= e2;
+                    after[c]= best;
+                }
+            }
+        }
+    }
+
+    /** Store in extra[c] the fewest extra steps that inserting key c into tour t[0..size-1] <br>
+     * takes, and in after[c] the key after which it is inserted then. */
+    private void cheapestPosition(int[] t, int size, int c, int[] extra, int[] after) {
+        extra[c]= Integer.MAX_VALUE;
+        for (int p= 1; p < size; p++ ) {
+            int e= dist[t[p - 1]][c] + dist[c][t[p]] - dist[t[p - 1]][t[p]];
+            if (e < extra[c]) {
+                extra[c]= e;
+                after[c]= t[p - 1];
+            }
+        }
+    }
+
+    /** Return tour made shorter by 2-opt moves (reversing a part of it) and or-opt moves <br>
+     * (moving up to three consecutive key nodes elsewhere, possibly reversed), until <br>
+     * no move makes it shorter. The start and the exit stay at the ends. */
+    private int[] shorten(int[] tour) {
+        int[] t= tour.clone();
+        boolean improved= true;
+        while (improved && !interrupted()) {
+            improved= twoOpt(t) || orOpt(t);
+        }
+        return t;
+    }
+
+    /** Make tour t shorter by reversing some t[i..j], if that helps, and return true iff <br>
+     * that was done. */
+    private boolean twoOpt(int[] t) {
+        for (int i= 1; i < t.length - 2; i++ ) {
+            for (int j= i + 1; j < t.length - 1; j++ ) {
+                int delta= dist[t[i - 1]][t[j]] + dist[t[i]][t[j + 1]] -
+                    dist[t[i - 1]][t[i]] - dist[t[j]][t[j + 1]];
+                if (delta < 0) {
+                    reverse(t, i, j);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Make tour t shorter by moving some segment t[i..i+m-1] of 1 to 3 key nodes, <br>
+     * possibly reversed, between two other consecutive key nodes, if that helps, <br>
+     * and return true iff that was done. */
+    private boolean orOpt(int[] t) {
+        for (int m= 1; m <= 3; m++ ) {
+            for (int i= 1; i + m < t.length; i++ ) {
+                int first= t[i];
+                int last= t[i + m - 1];
+                int prev= t[i - 1];
+                int nxt= t[i + m];
+                int gain= dist[prev][first] + dist[last][nxt] - dist[prev][nxt];
+                for (int p= 0; p + 1 < t.length; p++ ) {
+                    if (p >= i - 1 && p < i + m) continue;
+                    int a= t[p];
+                    int b= t[p + 1];
+                    int add= dist[a][first] + dist[last][b] - dist[a][b];
+                    int addRev= dist[a][last] + dist[first][b] - dist[a][b];
+                    if (Math.min(add, addRev) < gain) {
+                        moveSegment(t, i, m, p, addRev < add);
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff the calling thread has been interrupted (the flag is kept). */
+    private static boolean interrupted() {
+        return Thread.currentThread().isInterrupted();
+    }
+
+    /** Reverse t[i..j]. */
+    private static void reverse(int[] t, int i, int j) {
+        for (; i < j; i++ , j-- ) {
+            int x= t[i];
+            t[i]= t[j];
+            t[j]= x;
+        }
+    }
+
+    /** Move the segment t[i..i+m-1] between t[p] and t[p+1], reversed iff rev. <br>
+     * Precondition: p < i - 1 or p >= i + m. */
+    private static void moveSegment(int[] t, int i, int m, int p, boolean rev) {
+        int[] seg= Arrays.copyOfRange(t, i, i + m);
+        if (rev) reverse(seg, 0, m - 1);
+        if (p < i) {
+            // Shift t[p+1..i-1] right by m and put the segment at p+1.
+            System.arraycopy(t, p + 1, t, p + 1 + m, i - p - 1);
+            System.arraycopy(seg, 0, t, p + 1, m);
+        } else {
+            // Shift t[i+m..p] left by m and put the segment just before t[p+1].
+            System.arraycopy(t, i + m, t, i, p - i - m + 1);
+            System.arraycopy(seg, 0, t, p - m + 1, m);
+        }
+    }
+
+    /** Move state along tour, a tour returned by plan() for state's scram, taking a <br>
+     * shortest path from each key node to the next. A gold tile whose gold was already <br>
+     * picked up on the way is skipped: going straight to the next one is never longer. */
+    public void follow(ScramState state, int[] tour) {
+        int v= state.currentNode().getIndex();
+        for (int k= 1; k < tour.length; k++ ) {
+            int j= tour[k];
+            if (k < tour.length - 1 && g.node(keys[j]).getTile().gold() == 0) continue;
+            while (v != keys[j]) {
+                v= matrix.nextHop(v, j);
+                state.moveTo(g.node(v));
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package game;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/** The compact binary format of a Cavern. All numbers are big-endian.
+ *
+ * <pre>
+ * header   int   MAGIC ("CAVB")
+ *          short VERSION
+ *          short 0 (reserved)
+ *          int   rows
+ *          int   cols
+ *          int   index (row * cols + col) of the target
+ *          int   number n of open (non-wall) tiles
+ * nodes    n records, one per open tile, in the order of serialize():
+ *          int            index of the tile
+ *          unsigned short gold on the tile
+ *          unsigned short number of edges d in bits 0..2, the Cavern.Direction
+ *                         ordinal of edge k in bits 3+2k..4+2k and the Tile.Type
+ *                         ordinal of the tile in bits 11..12
+ *          d unsigned bytes: the lengths of the edges
+ * </pre>
+ *
+ * Every tile that has no record is a wall, so the size is proportional to the number of <br>
+ * open tiles, not to the grid. Version 1 had instead, between the header and the nodes, <br>
+ * rows*cols bytes with the Tile.Type ordinal of every tile; it can still be read. <br>
+ *
+ * Nodes and edges are listed in the same order as in the text format, so a cavern read <br>
+ * back iterates exactly like deserialize(serialize()). Node ids must be row * cols + col, <br>
+ * as for every generated cavern. A cavern is read directly from a ByteBuffer, which may <br>
+ * be a memory-mapped file, with no intermediate strings. */
+/* package */ class BinaryCavernFormat {
+
+	/** The first four bytes of a binary cavern: "CAVB". */
+	static final int MAGIC= 0x43415642;
+
+	/** The version of the format written by this class. */
+	static final short VERSION= 2;
+
+	/** Size of the header in bytes. */
+	private static final int HEADER_BYTES= 24;
+
+	/** The first bit of the Tile.Type ordinal in the code of a node record. */
+	private static final int TYPE_SHIFT= 3 + 2 * GridGraph.MAX_DEGREE;
+
+	/** Not instantiable. */
+	private BinaryCavernFormat() {}
+
+	/** Return true iff buf, from its position on, starts with MAGIC. <br>
+	 * Does not change the position of buf. */
+	static boolean isBinary(ByteBuffer buf) {
+		return buf.remaining() >= 4 && buf.getInt(buf.position()) == MAGIC;
+	}
+
+	/** Return the number of bytes of the binary form of cavern c. <br>
+	 * Throw an IllegalArgumentException if it does not fit in a byte array. */
+	static int size(Cavern c) {
+		GridGraph g= c.getAdjacency();
+		long n= HEADER_BYTES + 8L * c.numOpenTiles() + g.offset(g.size());
+		if (n > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Cavern too large for the binary format: " +
+				n + " bytes");
+		}
+		return (int) n;
+	}
+
+	/** Write the binary form of cavern c into buf, from its position on. <br>
+	 * Throw an IllegalArgumentException if c cannot be represented (node ids that <br>
+	 * are not row * cols + col, gold or edge lengths that do not fit). */
+	static void write(Cavern c, ByteBuffer buf) {
+		GridGraph g= c.getAdjacency();
+		buf.putInt(MAGIC);
+		buf.putShort(VERSION);
+		buf.putShort((short) 0);
+		buf.putInt(c.getRowCount());
+		buf.putInt(c.getColumnCount());
+		buf.putInt(g.cell(g.index(c.getTarget())));
+		buf.putInt(c.numOpenTiles());
+
+		for (Node node : c.getGraph()) {
+			int i= g.index(node);
+			int cell= g.cell(i);
+			if (node.getId() != cell) {
+				throw new IllegalArgumentException("Node id " + node.getId() +
+					" is not its index " + cell);
+			}
+			int gold= node.getTile().gold();
+			if (gold < 0 || gold > 0xFFFF) {
+				throw new IllegalArgumentException("Gold does not fit in 16 bits: " + gold);
+			}
+			int d= g.degree(i);
+			int code= d | node.getTile().getType().ordinal() << TYPE_SHIFT;
+			for (int k= 0; k < d; k++ ) {
+				int j= g.cell(g.neighbor(g.offset(i) + k));
+				Cavern.Direction dir= Cavern.Direction.of(j / g.cols - cell / g.cols,
+					j % g.cols - cell % g.cols);
+				if (dir == null) {
+					throw new IllegalArgumentException("Edge from " + cell + " to " + j +
+						" is not on the grid");
+				}
+				code|= dir.ordinal() << (3 + 2 * k);
+			}
+			buf.putInt(cell);
+			buf.putShort((short) gold);
+			buf.putShort((short) code);
+			for (int k= 0; k < d; k++ ) {
+				int w= g.weight(g.offset(i) + k);
+				if (w > 0xFF) {
+					throw new IllegalArgumentException("Edge length does not fit in 8 bits: " + w);
+				}
+				buf.put((byte) w);
+			}
+		}
+	}
+
+	/** Read a cavern in binary form from buf, from its position on, leaving the <br>
+	 * position just after it. Throw an IllegalArgumentException if buf does not <br>
+	 * hold a cavern in a supported version of the format. */
+	static Cavern read(ByteBuffer buf) {
+		try {
+			if (buf.getInt() != MAGIC) throw new IllegalArgumentException("Not a binary cavern");
+			short version= buf.getShort();
+			if (version != 1 && version != VERSION) {
+				throw new IllegalArgumentException("Unsupported binary cavern version " + version);
+			}
+			buf.getShort();
+			int rows= buf.getInt();
+			int cols= buf.getInt();
+			int targetIndex= buf.getInt();
+			int open= buf.getInt();
+
+			Tile.Type[] types= Tile.Type.values();
+			Cavern.Direction[] dirs= Cavern.Direction.values();
+			int tilesAt= buf.position();
+			if (version == 1) buf.position(tilesAt + rows * cols);
+
+			// Fill the map in the order of serialize(), as deserialize() does, so that
+			// the graph set iterates in the same order.
+			Map<Long, Node> idToNode= new HashMap<>();
+			Node[] nodes= new Node[rows * cols];
+			GridGraph.Builder builder= new GridGraph.Builder(rows, cols);
+			for (int n= 0; n < open; n++ ) {
+				int i= buf.getInt();
+				int r= i / cols;
+				int c= i % cols;
+				int gold= buf.getShort() & 0xFFFF;
+				int code= buf.getShort() & 0xFFFF;
+				int type= version == 1 ? buf.get(tilesAt + i) : code >>> TYPE_SHIFT & 0x3;
+				Node node= new Node(i, new Tile(r, c, gold, types[type]));
+				nodes[i]= node;
+				idToNode.put((long) i, node);
+
+				int d= code & 0x7;
+				for (int k= 0; k < d; k++ ) {
+					Cavern.Direction dir= dirs[code >>> (3 + 2 * k) & 0x3];
+					builder.addDirected(r, c, r + dir.getRowDelta(), c + dir.getColumnDelta(),
+						buf.get() & 0xFF);
+				}
+			}
+
+			return new Cavern(new HashSet<>(idToNode.values()), nodes[targetIndex],
+				builder.build(nodes));
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Truncated binary cavern", e);
+		}
+	}
+}
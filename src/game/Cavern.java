@@ -1,19 +1,24 @@
 package game;
 
-import java.util.ArrayDeque;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
-import java.util.function.Supplier;
+import java.util.function.IntSupplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /** An instance is a Cavern through which the hunter can move.<br>
  * It's a grid of Tile objects with a weighted graph of all non-floor tiles.<br>
@@ -37,6 +42,23 @@ public class Cavern {
 	/** Whatever. */
 	public static final int TASTY_VALUE= 5000;
 
+	/** Version of the generator. Change it whenever the cavern generated from a given <br>
+	 * Random sequence changes, so that caverns saved by an older generator are not reused. */
+	public static final int GENERATOR_VERSION= 1;
+
+	/** The ways of generating a cavern that satisfies the constraints of a game. */
+	public enum GenerationMode {
+		/** Generate whole caverns until one satisfies the constraints. This gives the <br>
+		 * same cavern for a given Random sequence as all earlier versions. */
+		LEGACY,
+		/** Generate one cavern and make it satisfy the constraints: place the orb on a <br>
+		 * tile sampled from the tiles far enough from the entrance (by breadth-first <br>
+		 * search) and carve open the tiles needed to reach a required tile. A cavern is <br>
+		 * generated again only in the rare case that it cannot be repaired, so the time <br>
+		 * taken is predictable. */
+		INCREMENTAL;
+	}
+
 	/** An enum representing a grid direction. */
 	public enum Direction {
 		/** North */
@@ -48,48 +70,35 @@ public class Cavern {
 		/** West */
 		WEST(0, -1);
 
-		private final Point dir;
+		private final int dRow;
+		private final int dCol;
 
 		/** Constructor: an instance with direction row, col. */
 		private Direction(int row, int col) {
-			dir= new Point(row, col);
-		}
-
-		/** Return the direction. */
-		public Point getPoint() {
-			return dir;
-		}
-	}
-
-	/** An enum representing a point on the grid. */
-	private static class Point {
-		private final int row;
-		private final int col;
-
-		/** Constructor: an instance for (r, c). */
-		private Point(int r, int c) {
-			row= r;
-			col= c;
+			dRow= row;
+			dCol= col;
 		}
 
-		/** Return a new point that is this point with p added to it. */
-		public Point add(Point p) {
-			return new Point(row + p.row, col + p.col);
+		/** Return the change in row when moving one tile in this direction. */
+		public int getRowDelta() {
+			return dRow;
 		}
 
-		/** Return tree iff this and ob are of the same class and<br>
-		 * have the same row and col. */
-		@Override
-		public boolean equals(Object ob) {
-			if (this == ob) return true;
-			if (ob == null || getClass() != ob.getClass()) return false;
-			Point p= (Point) ob;
-			return p.row == row && p.col == col;
+		/** Return the change in column when moving one tile in this direction. */
+		public int getColumnDelta() {
+			return dCol;
 		}
 
-		@Override
-		public int hashCode() {
-			return Objects.hash(row, col);
+		/** Return the direction that moves by (dRow, dCol), or null if there is none. */
+		public static Direction of(int dRow, int dCol) {
+			if (dRow == 0) {
+				if (dCol == 1) return EAST;
+				if (dCol == -1) return WEST;
+			} else if (dCol == 0) {
+				if (dRow == 1) return SOUTH;
+				if (dRow == -1) return NORTH;
+			}
+			return null;
 		}
 	}
 
@@ -100,7 +109,20 @@ public class Cavern {
 	private final Node entrance;
 	private final Node target;
 
-	private final Node[][] tiles;
+	/** Number of caverns generated to obtain this one <br>
+	 * (1 if it was loaded, 0 if it is a copy). */
+	private int generationAttempts= 1;
+
+	/** The edges of the graph, in compressed-sparse-row form. */
+	private final GridGraph adjacency;
+
+	/** Shortest-path engine over tiles, created lazily by dijkstra(). */
+	private GridDijkstra dijkstra;
+
+	/** Length of a shortest path from each open tile (by its index in adjacency) to the <br>
+	 * target, created lazily by targetDistances(). Edges are undirected and their weights <br>
+	 * never change (taking gold does not affect them), so once computed it never goes stale. */
+	private int[] targetDistances;
 
 	/** Return a new random cavern of the given size where there is no gold, <br>
 	 * all edges have weight 1, and there is an orb a reasonable distance from the exit.
@@ -111,13 +133,181 @@ public class Cavern {
 	public static Cavern digHuntCavern(int rows, int cols, Random rand) {
 		int minOrbDist= minOrbDistance(rows, cols);
 
+		int attempts= 1;
 		Cavern cavern= new Cavern(rows, cols, rand, () -> 1, () -> 0, Tile.Type.ORB);
 		while (cavern.minPathLengthToTarget(cavern.getEntrance()) < minOrbDist) {
 			cavern= new Cavern(rows, cols, rand, () -> 1, () -> 0, Tile.Type.ORB);
+			attempts++ ;
 		}
+		cavern.generationAttempts= attempts;
 		return cavern;
 	}
 
+	/** Same as digHuntCavern(rows, cols, rand), but generated using mode. */
+	public static Cavern digHuntCavern(int rows, int cols, Random rand, GenerationMode mode) {
+		if (mode == GenerationMode.LEGACY) return digHuntCavern(rows, cols, rand);
+
+		int minOrbDist= minOrbDistance(rows, cols);
+		int attempts= 1;
+		List<Node> nodes= generateNodes(rows, cols, rand, () -> 0);
+		while (!placeTarget(nodes, rows, cols, minOrbDist, rand)) {
+			nodes= generateNodes(rows, cols, rand, () -> 0);
+			attempts++ ;
+		}
+		Cavern cavern= new Cavern(rows, cols, nodes, Tile.Type.ORB, () -> 1);
+		cavern.generationAttempts= attempts;
+		return cavern;
+	}
+
+	/** Same as digHuntCavern(rows, cols, currentRow, currentCol, rand), but generated <br>
+	 * using mode. */
+	public static Cavern digHuntCavern(int rows, int cols, int currentRow, int currentCol,
+		Random rand, GenerationMode mode) {
+		if (mode == GenerationMode.LEGACY) {
+			return digHuntCavern(rows, cols, currentRow, currentCol, rand);
+		}
+
+		IntSupplier edgeWeightGen= () -> rand.nextInt(MAX_EDGE_WEIGHT) + 1;
+		IntSupplier goldGen= () -> Cavern.generateGoldValue(rand);
+		List<Node> nodes= generateNodes(rows, cols, rand, goldGen);
+		carveTo(nodes, rows, cols, currentRow, currentCol, goldGen);
+		return new Cavern(rows, cols, nodes, Tile.Type.ENTRANCE, edgeWeightGen);
+	}
+
+	/** Turn a node of nodes (not the entrance, nodes.get(0)) whose breadth-first distance <br>
+	 * from the entrance is at least minDist into the orb, choosing it uniformly using rand. <br>
+	 * If no node is that far, first lengthen the graph by opening, one by one, wall tiles <br>
+	 * next to a farthest node and to no other open tile (so no distance gets shorter). <br>
+	 * Return false (changing nothing but nodes' extension) if that gets stuck. */
+	private static boolean placeTarget(List<Node> nodes, int rows, int cols, int minDist,
+		Random rand) {
+		int[] dist= new int[rows * cols];
+		int max= bfsDistances(nodes, cols, dist);
+		while (max < minDist) {
+			Node ext= null;
+			for (int k= nodes.size() - 1; ext == null && k >= 0; k-- ) {
+				Tile t= nodes.get(k).getTile();
+				if (dist[t.getRow() * cols + t.getColumn()] != max) continue;
+				for (Direction d : Direction.values()) {
+					int r= t.getRow() + d.getRowDelta();
+					int c= t.getColumn() + d.getColumnDelta();
+					if (isInterior(r, c, rows, cols) && dist[r * cols + c] < 0 &&
+						openNeighbors(dist, rows, cols, r, c) == 1) {
+						ext= new Node(new Tile(r, c, 0, Tile.Type.FLOOR), cols);
+						break;
+					}
+				}
+			}
+			if (ext == null) return false;
+			nodes.add(ext);
+			max++ ;
+			dist[ext.getTile().getRow() * cols + ext.getTile().getColumn()]= max;
+		}
+
+		List<Node> far= new ArrayList<>();
+		for (int k= 1; k < nodes.size(); k++ ) {
+			Tile t= nodes.get(k).getTile();
+			if (dist[t.getRow() * cols + t.getColumn()] >= minDist) far.add(nodes.get(k));
+		}
+		far.get(rand.nextInt(far.size())).getTile().setType(Tile.Type.ORB);
+		return true;
+	}
+
+	/** Store in dist the breadth-first (unit weight) distance from the entrance, <br>
+	 * nodes.get(0), to every tile of nodes, and -1 for every other tile. <br>
+	 * Return the largest distance. dist is indexed by row * cols + col. */
+	private static int bfsDistances(List<Node> nodes, int cols, int[] dist) {
+		final int open= -2;
+		Arrays.fill(dist, -1);
+		for (Node n : nodes) {
+			dist[n.getTile().getRow() * cols + n.getTile().getColumn()]= open;
+		}
+		int rows= dist.length / cols;
+		int[] queue= new int[nodes.size()];
+		int head= 0;
+		int tail= 0;
+		Tile e= nodes.get(0).getTile();
+		queue[tail++ ]= e.getRow() * cols + e.getColumn();
+		dist[queue[0]]= 0;
+		int max= 0;
+		while (head < tail) {
+			int i= queue[head++ ];
+			max= dist[i];
+			for (Direction d : Direction.values()) {
+				int r= i / cols + d.getRowDelta();
+				int c= i % cols + d.getColumnDelta();
+				if (r >= 0 && r < rows && c >= 0 && c < cols && dist[r * cols + c] == open) {
+					dist[r * cols + c]= dist[i] + 1;
+					queue[tail++ ]= r * cols + c;
+				}
+			}
+		}
+		return max;
+	}
+
+	/** Return the number of tiles next to (r, c) that are open in dist (at least 0). */
+	private static int openNeighbors(int[] dist, int rows, int cols, int r, int c) {
+		int n= 0;
+		for (Direction d : Direction.values()) {
+			int r2= r + d.getRowDelta();
+			int c2= c + d.getColumnDelta();
+			if (r2 >= 0 && r2 < rows && c2 >= 0 && c2 < cols && dist[r2 * cols + c2] >= 0) n++ ;
+		}
+		return n;
+	}
+
+	/** Make tile (r, c) part of the graph of nodes, if it is not already, by opening the <br>
+	 * tiles of a shortest grid path from it to the nearest tile of nodes, using gold <br>
+	 * for their gold. <br>
+	 * Precondition: (r, c) is an interior tile. */
+	private static void carveTo(List<Node> nodes, int rows, int cols, int r, int c,
+		IntSupplier gold) {
+		boolean[] open= new boolean[rows * cols];
+		for (Node n : nodes) {
+			open[n.getTile().getRow() * cols + n.getTile().getColumn()]= true;
+		}
+		if (open[r * cols + c]) return;
+
+		// Breadth-first search over interior tiles from (r, c) to the nearest open tile.
+		int[] from= new int[rows * cols];
+		Arrays.fill(from, -1);
+		int[] queue= new int[rows * cols];
+		int head= 0;
+		int tail= 0;
+		queue[tail++ ]= r * cols + c;
+		from[r * cols + c]= r * cols + c;
+		int reached= -1;
+		while (reached < 0 && head < tail) {
+			int i= queue[head++ ];
+			for (Direction d : Direction.values()) {
+				int r2= i / cols + d.getRowDelta();
+				int c2= i % cols + d.getColumnDelta();
+				int j= r2 * cols + c2;
+				if (r2 < 0 || r2 >= rows || c2 < 0 || c2 >= cols || from[j] >= 0) continue;
+				if (open[j]) {
+					reached= i;
+					break;
+				}
+				if (isInterior(r2, c2, rows, cols)) {
+					from[j]= i;
+					queue[tail++ ]= j;
+				}
+			}
+		}
+
+		// Open the tiles from the one next to the graph back to (r, c).
+		for (int i= reached; ; i= from[i]) {
+			Tile t= new Tile(i / cols, i % cols, gold.getAsInt(), Tile.Type.FLOOR);
+			nodes.add(new Node(t, cols));
+			if (i == r * cols + c) break;
+		}
+	}
+
+	/** Return true iff (r, c) is a tile of a rows x cols grid that is not on its border. */
+	private static boolean isInterior(int r, int c, int rows, int cols) {
+		return r > 0 && r < rows - 1 && c > 0 && c < cols - 1;
+	}
+
 	/** Return the minimum allowable path distance from the entrance to the orb. */
 	private static int minOrbDistance(int rows, int cols) {
 		return (rows + cols) / 2;
@@ -133,14 +323,17 @@ public class Cavern {
 	 * @param rand       A source of randomness to use for the cavern generation. */
 	public static Cavern digHuntCavern(int rows, int cols, int currentRow, int currentCol,
 		Random rand) {
-		Supplier<Integer> edgeWeightGen= () -> rand.nextInt(MAX_EDGE_WEIGHT) + 1;
-		Supplier<Integer> goldGen= () -> Cavern.generateGoldValue(rand);
+		IntSupplier edgeWeightGen= () -> rand.nextInt(MAX_EDGE_WEIGHT) + 1;
+		IntSupplier goldGen= () -> Cavern.generateGoldValue(rand);
+		int attempts= 1;
 		Cavern potentialCavern= new Cavern(rows, cols, rand, edgeWeightGen, goldGen,
 			Tile.Type.ENTRANCE);
 		while (potentialCavern.getTileAt(currentRow, currentCol).getType() != Tile.Type.FLOOR) {
 			potentialCavern= new Cavern(rows, cols, rand, edgeWeightGen, goldGen,
 				Tile.Type.ENTRANCE);
+			attempts++ ;
 		}
+		potentialCavern.generationAttempts= attempts;
 		return potentialCavern;
 	}
 
@@ -162,43 +355,46 @@ public class Cavern {
 	 * Precondition: {@code targetType} must be either <br>
 	 * {@code Tile.Type.ORB} or {@code Tile.Type.ENTRANCE}. */
 	private Cavern(int rws, int cls, Random rand,
-		Supplier<Integer> edgeWeightGenerator,
-		Supplier<Integer> goldGenerator,
+		IntSupplier edgeWeightGenerator,
+		IntSupplier goldGenerator,
 		Tile.Type targetType) {
+		this(rws, cls, pickTarget(generateNodes(rws, cls, rand, goldGenerator), targetType, rand),
+			targetType, edgeWeightGenerator);
+	}
+
+	/** Constructor: a new cavern of size (rws, cls) whose open tiles are nodes, <br>
+	 * with the node of type targetType as target. <br>
+	 * This uses {@code edgeWeightGenerator} to generate edge weights. <br>
+	 * Precondition: nodes contains one ENTRANCE node and one node of type targetType, <br>
+	 * which must be either {@code Tile.Type.ORB} or {@code Tile.Type.ENTRANCE}. */
+	private Cavern(int rws, int cls, List<Node> nodes, Tile.Type targetType,
+		IntSupplier edgeWeightGenerator) {
 		rows= rws;
 		cols= cls;
 
-		graph= generateGraph(rand, targetType, goldGenerator);
+		graph= Collections.unmodifiableSet(new HashSet<>(nodes));
 		entrance= graph.stream().filter((n) -> n.getTile().getType() == Tile.Type.ENTRANCE)
 			.findAny().get();
 		target= graph.stream().filter((n) -> n.getTile().getType() == targetType).findAny().get();
 
-		// Set tiles for the floor and then add walls wherever floor is missing.
-		tiles= new Node[rows][cols];
+		// Only the open tiles have nodes; the graph creates the nodes of walls on demand.
+		Node[] open= new Node[rows * cols];
 		for (Node node : graph) {
 			Tile t= node.getTile();
-			tiles[t.getRow()][t.getColumn()]= node;
-		}
-		for (int i= 0; i < rows; i++ ) {
-			for (int j= 0; j < cols; j++ ) {
-				if (tiles[i][j] == null) {
-					tiles[i][j]= new Node(new Tile(i, j, 0, Tile.Type.WALL), cols);
-				}
-			}
+			open[t.getRow() * cols + t.getColumn()]= node;
 		}
-		createEdges(tiles, edgeWeightGenerator);
+		adjacency= createEdges(open, rows, cols, edgeWeightGenerator);
 	}
 
-	/** Constructor; a graph constructed from the given graph g and tiles t, with<br>
-	 * target trgt. <br>
+	/** Constructor; a graph constructed from the given graph g, with target trgt. <br>
 	 * Preconditions: <br>
-	 * 1. g and t represent the same graph (i.e.<br>
-	 * .. g contains all non-floor nodes in t and edges are along the grid). <br>
-	 * 2. trgt is a node in t. */
-	private Cavern(Set<Node> g, Node[][] t, Node trgt) {
-		tiles= t;
-		rows= tiles.length;
-		cols= tiles[0].length;
+	 * 1. g contains all non-wall nodes and its edges are along the grid. <br>
+	 * 2. trgt is a node in g. <br>
+	 * 3. adj is the graph of the edges of g, built over the nodes of g. */
+	/* package */ Cavern(Set<Node> g, Node trgt, GridGraph adj) {
+		adjacency= adj;
+		rows= adj.getRowCount();
+		cols= adj.getColumnCount();
 
 		graph= Collections.unmodifiableSet(g);
 		entrance= graph.stream().filter((n) -> n.getTile().getType() == Tile.Type.ENTRANCE)
@@ -206,118 +402,163 @@ public class Cavern {
 		target= trgt;
 	}
 
-	/** Given tiles t without edges and a supplier to return edge weights, <br>
-	 * add edges to the nodes between adjacent non-wall tiles. <br>
-	 * Precondition: all elements of {@code tiles} are non-null. */
-	private void createEdges(Node[][] t, Supplier<Integer> edgeWeightGenerator) {
-		for (int i= 0; i < t.length - 1; i++ ) {
-			for (int j= 0; j < t[i].length - 1; j++ ) {
-				Node node= t[i][j];
-				if (node.getTile().getType() == Tile.Type.WALL) {
+	/** Return a copy of this cavern with new tiles and nodes, in which no gold <br>
+	 * has been taken yet. The copy shares the immutable edge arrays and distance <br>
+	 * fields of this cavern, so it takes time linear in the number of open tiles. */
+	Cavern copy() {
+		// Add the nodes in this graph's order so that the copy iterates in the same order.
+		List<Node> nodes= new ArrayList<>(graph.size());
+		Node trgt= null;
+		for (Node n : graph) {
+			Tile old= n.getTile();
+			Node m= new Node(n.getId(), new Tile(old.getRow(), old.getColumn(),
+				old.getOriginalGold(), old.getType()));
+			nodes.add(m);
+			if (n == target) trgt= m;
+		}
+		Cavern c= new Cavern(new HashSet<>(nodes), trgt, new GridGraph(adjacency, nodes));
+		c.generationAttempts= 0;
+		synchronized (this) {
+			c.targetDistances= targetDistances;
+		}
+		return c;
+	}
+
+	/** Return an estimate of the bytes of memory used by this cavern. */
+	long estimatedBytes() {
+		// A Node and its Tile take roughly 80 bytes and the graph set roughly 40 bytes
+		// per open tile; walls have no Node until one is asked for.
+		long perTile= 120L * graph.size();
+		long fields= targetDistances == null ? 0 : 4L * targetDistances.length;
+		return perTile + fields + adjacency.estimatedBytes();
+	}
+
+	/** Given the open nodes of a rows x cols grid without edges (by index row * cols + col, <br>
+	 * null at walls) and a supplier to return edge weights, return the graph with <br>
+	 * edges between adjacent open tiles. */
+	private static GridGraph createEdges(Node[] open, int rows, int cols,
+		IntSupplier edgeWeightGenerator) {
+		GridGraph.Builder builder= new GridGraph.Builder(rows, cols);
+		for (int i= 0; i < rows - 1; i++ ) {
+			for (int j= 0; j < cols - 1; j++ ) {
+				Node node= open[i * cols + j];
+				if (node == null) {
 					continue;
 				}
 
-				final Point p= new Point(i, j);
-				Stream.of(Direction.SOUTH, Direction.EAST)
-					.map(Direction::getPoint)
-					.map(p::add)
-					.map((q) -> t[q.row][q.col])
-					.filter((m) -> m.getTile().getType() != Tile.Type.WALL)
-					.forEach((m) -> {
-						int weight= edgeWeightGenerator.get();
-						node.addEdge(new Edge(node, m, weight));
-						m.addEdge(new Edge(m, node, weight));
-					});
+				// South first, then east.
+				Node south= open[(i + 1) * cols + j];
+				if (south != null) {
+					builder.addUndirected(node, south, edgeWeightGenerator.getAsInt());
+				}
+				Node east= open[i * cols + j + 1];
+				if (east != null) {
+					builder.addUndirected(node, east, edgeWeightGenerator.getAsInt());
+				}
 			}
 		}
+		return builder.build(open);
 	}
 
-	/** Return true iff p is on the grid. */
-	private boolean isValid(Point p) {
-		return p.row > 0 && p.row < rows - 1 && p.col > 0 && p.col < cols - 1;
-	}
-
-	/** Generate a new random graph that fits within the grid and return the set of nodes. */
-	private Set<Node> generateGraph(Random rand,
-		Tile.Type targetType,
-		Supplier<Integer> goldGenerator) {
+	/** Generate a new random graph that fits within a grid of size (rows, cols) and <br>
+	 * return its nodes in the order they were created, the entrance first. */
+	private static List<Node> generateNodes(int rows, int cols, Random rand,
+		IntSupplier goldGenerator) {
 		List<Node> nodes= new ArrayList<>();
 
-		Set<Point> pointsSeen= new HashSet<>();
-		Set<Point> openPoints= new HashSet<>();
-		Queue<Node> frontier= new ArrayDeque<>();
-
-		Point entrancePoint= getEntrancePoint(rand);
-		Node entrance= new Node(new Tile(entrancePoint.row,
-			entrancePoint.col, 0, Tile.Type.ENTRANCE), cols);
-		nodes.add(entrance);
-
-		pointsSeen.add(entrancePoint);
-		openPoints.add(entrancePoint);
-		frontier.add(entrance);
-		while (!frontier.isEmpty()) {
-			Node node= frontier.remove();
-			Point p= new Point(node.getTile().getRow(), node.getTile().getColumn());
+		// Tiles are indexed by row * cols + col. frontier[head..tail-1] holds the open
+		// tiles whose neighbors have not been looked at yet, in the order they were opened;
+		// it grows as needed, so it takes memory proportional to the open tiles.
+		BitSet pointsSeen= new BitSet(rows * cols);
+		BitSet openPoints= new BitSet(rows * cols);
+		int[] frontier= new int[64];
+		int head= 0;
+		int tail= 0;
+		int[] newExits= new int[Direction.values().length];
+		Direction[] dirs= Direction.values();
+
+		int entrancePoint= getEntrancePoint(rows, cols, rand);
+		nodes.add(new Node(new Tile(entrancePoint / cols, entrancePoint % cols, 0,
+			Tile.Type.ENTRANCE), cols));
+
+		pointsSeen.set(entrancePoint);
+		openPoints.set(entrancePoint);
+		frontier[tail++ ]= entrancePoint;
+		while (head < tail) {
+			int p= frontier[head++ ];
+			int row= p / cols;
+			int col= p % cols;
 
 			// We want to make sure there's a way out if we can get one.
 			// This will prevent stupid degenerate graphs.
 			int existingExits= 0;
-			List<Point> newExits= new ArrayList<>();
-			for (Direction dir : Direction.values()) {
-				Point newPt= dir.getPoint().add(p);
-				if (isValid(newPt)) {
-					if (openPoints.contains(newPt)) {
+			int nExits= 0;
+			for (Direction dir : dirs) {
+				int r= row + dir.getRowDelta();
+				int c= col + dir.getColumnDelta();
+				if (isInterior(r, c, rows, cols)) {
+					int q= r * cols + c;
+					if (openPoints.get(q)) {
 						existingExits++ ;
-					} else if (pointsSeen.add(newPt)) {
-						newExits.add(newPt);
+					} else if (!pointsSeen.get(q)) {
+						pointsSeen.set(q);
+						newExits[nExits++ ]= q;
 					}
 				}
 			}
 
-			int nExits= newExits.size();
 			if (nExits > 0) {
 				double modifiedDensity;
-				Point forcedExit;
+				int forcedExit;
 				// Modify the density function so that the expected number of open exits
 				// is the same even though we're forcing something to be open.
 				if (existingExits < 2) {
 					modifiedDensity= nExits == 1 ? 0.0 : (nExits * DENSITY - 1) / (nExits - 1);
-					forcedExit= newExits.get(rand.nextInt(newExits.size()));
+					forcedExit= newExits[rand.nextInt(nExits)];
 				} else {
 					modifiedDensity= DENSITY;
-					forcedExit= null;
+					forcedExit= -1;
+				}
+				// Draw the density test and then the gold of each new exit in turn.
+				for (int k= 0; k < nExits; k++ ) {
+					int q= newExits[k];
+					if (q == forcedExit || rand.nextDouble() < modifiedDensity) {
+						openPoints.set(q);
+						nodes.add(new Node(new Tile(q / cols, q % cols, goldGenerator.getAsInt(),
+							Tile.Type.FLOOR), cols));
+						if (tail == frontier.length) frontier= Arrays.copyOf(frontier, 2 * tail);
+						frontier[tail++ ]= q;
+					}
 				}
-				newExits.stream()
-					.filter((q) -> q.equals(forcedExit) || rand.nextDouble() < modifiedDensity)
-					.peek(openPoints::add)
-					.map((q) -> new Node(
-						new Tile(q.row, q.col, goldGenerator.get(), Tile.Type.FLOOR), cols))
-					.peek(frontier::add)
-					.forEach(nodes::add);
 			}
 		}
 
+		return nodes;
+	}
+
+	/** Unless targetType is ENTRANCE, turn a random node of nodes that is not the <br>
+	 * entrance into a node of type targetType, using rand. Return nodes. */
+	private static List<Node> pickTarget(List<Node> nodes, Tile.Type targetType, Random rand) {
 		if (targetType != Tile.Type.ENTRANCE) {
 			// Grab a random tile that's not the entrance and make it the target.
 			int targetIdx= rand.nextInt(nodes.size() - 1) + 1;
 			nodes.get(targetIdx).getTile().setType(targetType);
 		}
-
-		return Collections.unmodifiableSet(new HashSet<>(nodes));
+		return nodes;
 	}
 
-	/** Return a randomly chosen entrance to the cavern (the only non-wall tile along an edge of the
-	 * grid), using rand. */
-	private Point getEntrancePoint(Random rand) {
+	/** Return the index (row * cols + col) of a randomly chosen entrance to the cavern <br>
+	 * (the only non-wall tile along an edge of the grid), using rand. */
+	private static int getEntrancePoint(int rows, int cols, Random rand) {
 		switch (rand.nextInt(4)) {
 		case 0: // North wall
-			return new Point(rand.nextInt(rows - 2) + 1, 0);
+			return (rand.nextInt(rows - 2) + 1) * cols;
 		case 1: // South wall
-			return new Point(rand.nextInt(rows - 2) + 1, cols - 1);
+			return (rand.nextInt(rows - 2) + 1) * cols + cols - 1;
 		case 2: // West wall
-			return new Point(0, rand.nextInt(cols - 2) + 1);
+			return rand.nextInt(cols - 2) + 1;
 		case 3: // East wall
-			return new Point(rows - 1, rand.nextInt(cols - 2) + 1);
+			return (rows - 1) * cols + rand.nextInt(cols - 2) + 1;
 		default:
 			throw new IllegalStateException("Unexpected random value!");
 		}
@@ -339,12 +580,23 @@ public class Cavern {
 		return cols;
 	}
 
+	/** Return the number of caverns that were generated to obtain this one <br>
+	 * (1 if this cavern was loaded rather than generated, 0 if it is a copy). */
+	int getGenerationAttempts() {
+		return generationAttempts;
+	}
+
 	/** Return the set of all nodes in the graph. <br>
 	 * This is an umodifiable view of the graph. */
 	public Set<Node> getGraph() {
 		return graph;
 	}
 
+	/** Return the edges of this cavern's graph in compressed-sparse-row form. */
+	public GridGraph getAdjacency() {
+		return adjacency;
+	}
+
 	/** Return the node corresponding to the entrance to the cavern. */
 	public Node getEntrance() {
 		return entrance;
@@ -358,45 +610,95 @@ public class Cavern {
 	/** Return the Tile information for tile (r, c). <br>
 	 * Precondition: (r, c) must be in the grid. */
 	public Tile getTileAt(int r, int c) {
-		return tiles[r][c].getTile();
+		return getNodeAt(r, c).getTile();
 	}
 
 	/** Return the node at the given (r, c). <br>
 	 * Precondition: (r, c) must be in the grid. */
 	public Node getNodeAt(int r, int c) {
-		return tiles[r][c];
+		return adjacency.nodeAt(r, c);
+	}
+
+	/** Return the Dijkstra engine for this cavern, creating it on first use. <br>
+	 * Precondition: all edges of this cavern have been created. */
+	private synchronized GridDijkstra dijkstra() {
+		if (dijkstra == null) {
+			dijkstra= new GridDijkstra(adjacency);
+		}
+		return dijkstra;
+	}
+
+	/** Return the distances to the target, computing them on first use. */
+	private synchronized int[] targetDistances() {
+		if (targetDistances == null) {
+			GridDijkstra engine= dijkstra();
+			targetDistances= engine.distancesFrom(engine.index(target));
+		}
+		return targetDistances;
+	}
+
+	/** Compute the distances to the target now, if they have not been computed yet, <br>
+	 * so that copies made afterwards share them. */
+	void warmDistances() {
+		targetDistances();
+	}
+
+	/** Return the length of a shortest path from tile (r, c) to the target, <br>
+	 * or Integer.MAX_VALUE if (r, c) is a wall or cannot reach the target. <br>
+	 * After the first call (on any tile) this takes time logarithmic in the number of <br>
+	 * open tiles, to find the index of (r, c). <br>
+	 * Precondition: (r, c) must be in the grid. */
+	public int distanceToTarget(int r, int c) {
+		int i= adjacency.index(r, c);
+		return i < 0 ? GridDijkstra.UNREACHED : targetDistances()[i];
+	}
+
+	/** Return a new array of the lengths of shortest paths to the target: <br>
+	 * element r * getColumnCount() + c is distanceToTarget(r, c). */
+	public int[] getTargetDistances() {
+		int[] td= targetDistances();
+		int[] d= new int[rows * cols];
+		Arrays.fill(d, GridDijkstra.UNREACHED);
+		for (int i= 0; i < td.length; i++ ) {
+			d[adjacency.cell(i)]= td[i];
+		}
+		return d;
+	}
+
+	/** Return the lengths of shortest paths between the nodes of ns, and their next hops, <br>
+	 * computed in parallel (see DistanceMatrix). <br>
+	 * Throw an IllegalArgumentException if ns is empty or has a node of another cavern. */
+	public DistanceMatrix distanceMatrix(List<Node> ns) {
+		if (ns.isEmpty() || ns.get(0).getGridGraph() != adjacency) {
+			throw new IllegalArgumentException("Nodes not in this cavern");
+		}
+		return new DistanceMatrix(ns);
 	}
 
 	/** Package-private implementation of Dijkstra's algorithm that <br>
 	 * returns only the minimum distance between the given node and the <br>
 	 * target node for this cavern (no path). <br>
+	 * The distances from all nodes are computed by the first call and then <br>
+	 * looked up, so this takes constant time after the first call. <br>
 	 * Precondition: start must be a node in the graph of this cavern. */
 	int minPathLengthToTarget(Node start) {
-		Map<Long, Integer> pathWeights= new HashMap<>();
-		InternalMinHeap<Node> heap= new InternalMinHeap<>();
-
-		pathWeights.put(start.getId(), 0);
-		heap.add(start, 0);
-		while (!heap.isEmpty()) {
-			Node n= heap.poll();
-			if (n.equals(target)) { return pathWeights.get(n.getId()); }
-
-			int nWeight= pathWeights.get(n.getId());
-
-			for (Edge e : n.getExits()) {
-				Node m= e.getOther(n);
-				int weightThroughN= nWeight + e.length();
-				Integer existingWeight= pathWeights.get(m.getId());
-				if (existingWeight == null) {
-					pathWeights.put(m.getId(), weightThroughN);
-					heap.add(m, weightThroughN);
-				} else if (weightThroughN < existingWeight) {
-					pathWeights.put(m.getId(), weightThroughN);
-					heap.changePriority(m, weightThroughN);
-				}
-			}
+		int i= adjacency.index(start);
+		int dist= i < 0 ? GridDijkstra.UNREACHED : targetDistances()[i];
+		if (dist == GridDijkstra.UNREACHED) {
+			throw new IllegalStateException("The search should always reach the desired location.");
 		}
-		throw new IllegalStateException("The above loop should always reach the desired location.");
+		return dist;
+	}
+
+	/** Same as minPathLengthToTarget(start), but always runs a new search from start <br>
+	 * that stops at the target instead of using the cached distances. */
+	int searchPathLengthToTarget(Node start) {
+		GridDijkstra engine= dijkstra();
+		int dist= engine.distance(engine.index(start), engine.index(target));
+		if (dist == GridDijkstra.UNREACHED) {
+			throw new IllegalStateException("The search should always reach the desired location.");
+		}
+		return dist;
 	}
 
 	/** Serialize this cavern to a list of strings which can be written out to a file. <br>
@@ -445,7 +747,8 @@ public class Cavern {
 			idToNode.put(nodeId, n);
 		}
 
-		Node[][] tiles= new Node[rows][cols];
+		Node[] open= new Node[rows * cols];
+		GridGraph.Builder builder= new GridGraph.Builder(rows, cols);
 		for (String nodeStr : nodeStrList) {
 			// The first line is not a node, it's metadata, so skip it.
 			if (nodeStr.equals(extraInfo)) {
@@ -456,22 +759,49 @@ public class Cavern {
 			long nodeId= Long.parseLong(nodeAndEdgeInfo[0].split(",")[0]);
 
 			Node n= idToNode.get(nodeId);
-			tiles[n.getTile().getRow()][n.getTile().getColumn()]= n;
+			Tile t= n.getTile();
+			open[t.getRow() * cols + t.getColumn()]= n;
 			for (String edgeStr : nodeAndEdgeInfo[1].split(",")) {
 				String[] idAndWeight= edgeStr.split("-");
 				long otherId= Long.parseLong(idAndWeight[0]);
 				int weight= Integer.parseInt(idAndWeight[1]);
-				n.addEdge(new Edge(n, idToNode.get(otherId), weight));
+				Tile o= idToNode.get(otherId).getTile();
+				builder.addDirected(t.getRow(), t.getColumn(), o.getRow(), o.getColumn(), weight);
 			}
 		}
 
-		for (int i= 0; i < rows; i++ ) {
-			for (int j= 0; j < cols; j++ ) {
-				if (tiles[i][j] == null) {
-					tiles[i][j]= new Node(new Tile(i, j, 0, Tile.Type.WALL), cols);
-				}
-			}
+		return new Cavern(new HashSet<>(idToNode.values()), idToNode.get(targetId),
+			builder.build(open));
+	}
+
+	/** Return this cavern in the compact binary format of BinaryCavernFormat. <br>
+	 * deserializeBinary() converts it back into a Cavern equal to one that <br>
+	 * deserialize(serialize()) would give. */
+	public byte[] serializeBinary() {
+		ByteBuffer buf= ByteBuffer.allocate(BinaryCavernFormat.size(this));
+		BinaryCavernFormat.write(this, buf);
+		return buf.array();
+	}
+
+	/** Convert the binary cavern in buf, from its position on, back into a Cavern, <br>
+	 * leaving the position of buf just after it. buf may be a memory-mapped file. <br>
+	 * Throw an IllegalArgumentException if buf does not hold a binary cavern. */
+	public static Cavern deserializeBinary(ByteBuffer buf) {
+		return BinaryCavernFormat.read(buf);
+	}
+
+	/** Write this cavern to file in binary format. */
+	public void writeBinary(Path file) throws IOException {
+		Files.write(file, serializeBinary());
+	}
+
+	/** Load the cavern stored in file, in either the binary or the text format. <br>
+	 * A binary file is memory-mapped and read without copying it first. */
+	public static Cavern load(Path file) throws IOException {
+		try (FileChannel ch= FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buf= ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			if (BinaryCavernFormat.isBinary(buf)) return BinaryCavernFormat.read(buf);
 		}
-		return new Cavern(new HashSet<>(idToNode.values()), tiles, idToNode.get(targetId));
+		return deserialize(Files.readAllLines(file, StandardCharsets.UTF_8));
 	}
 }
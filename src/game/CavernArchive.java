@@ -0,0 +1,436 @@
+package game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** An instance is an open archive file holding the hunt and scram caverns of many games, <br>
+ * each stored under the seed of its game in the binary format of BinaryCavernFormat.
+ *
+ * <pre>
+ * header   int MAGIC ("CAVA"), short VERSION, short 0 (reserved)
+ * entries  long seed, int hunt bytes, int scram bytes, hunt cavern, scram cavern
+ * index    one (long seed, long offset of its entry) per entry, in the order they were added
+ * footer   long offset of the index, int number of entries, int MAGIC
+ * </pre>
+ *
+ * Archives are written by a Writer, which streams entries to the end of the file and <br>
+ * writes a new index and footer when closed. The index and footer of an earlier writer <br>
+ * stay where they were, among the entries: the archive ends at its last footer. So the <br>
+ * file holds a complete archive at every point; the entries of a writer that is not <br>
+ * closed (e.g. because the process died) are simply not part of it. <br>
+ * Reading keeps only the index in memory: get(seed) finds an entry <br>
+ * in constant time and reads just its bytes, and iterating over the entries reads no <br>
+ * caverns until Entry.read() is called. Entries are read with positional reads into a <br>
+ * buffer each thread reuses, so reading many entries maps no memory and allocates little. <br>
+ * An open archive can be read by several threads.
+ *
+ * Usage: CavernArchive file seed n <br>
+ * ... adds the caverns of the n games main(-s seed -n n) plays to archive file. */
+public class CavernArchive implements Closeable, Iterable<CavernArchive.Entry> {
+
+	/** The first four bytes (and last four bytes) of an archive: "CAVA". */
+	static final int MAGIC= 0x43415641;
+
+	/** The version of the archive container written by this class. */
+	static final short VERSION= 1;
+
+	private static final int HEADER_BYTES= 8;
+	private static final int ENTRY_HEADER_BYTES= 16;
+	private static final int FOOTER_BYTES= 16;
+
+	/** Bytes of the index read at a time: 4096 entries. */
+	private static final int INDEX_CHUNK_BYTES= 1 << 16;
+
+	/** An instance is one game in an archive: its seed and where its caverns are. */
+	public static class Entry {
+		private final CavernArchive archive;
+		private final long seed;
+		private final long offset;
+
+		/** Constructor: the entry for seed at offset off of archive a. */
+		private Entry(CavernArchive a, long s, long off) {
+			archive= a;
+			seed= s;
+			offset= off;
+		}
+
+		/** Return the seed of this entry. */
+		public long getSeed() {
+			return seed;
+		}
+
+		/** Read and return the caverns of this entry (hunt first, scram second), <br>
+		 * as new caverns in which no gold has been taken. */
+		public Pair<Cavern, Cavern> read() {
+			return archive.readAt(offset);
+		}
+	}
+
+	/** An instance maps the seeds of entries to their numbers (0, 1, 2, ...) in constant <br>
+	 * expected time, using open addressing over int arrays instead of boxed Longs. */
+	private static class SeedIndex {
+		private long[] seeds= new long[16];
+		private int size;
+
+		/** Slot k holds the number of an entry + 1, or 0 if it is empty. */
+		private int[] table= new int[32];
+
+		/** Return the number of seeds in this index. */
+		int size() {
+			return size;
+		}
+
+		/** Return the i-th seed added to this index. */
+		long seed(int i) {
+			return seeds[i];
+		}
+
+		/** Return the number of the entry with seed s, or -1 if there is none. */
+		int find(long s) {
+			return table[slot(s)] - 1;
+		}
+
+		/** Add seed s as the next entry. Throw an IllegalArgumentException if it <br>
+		 * already has an entry. */
+		void add(long s) {
+			int k= slot(s);
+			if (table[k] != 0) throw new IllegalArgumentException("Duplicate seed " + s);
+			if (size == seeds.length) seeds= Arrays.copyOf(seeds, 2 * size);
+			seeds[size]= s;
+			size++ ;
+			table[k]= size;
+			if (2 * size > table.length) {
+				table= new int[2 * table.length];
+				for (int i= 0; i < size; i++ ) {
+					table[slot(seeds[i])]= i + 1;
+				}
+			}
+		}
+
+		/** Return the slot of table that holds seed s, or the empty slot where it would go. */
+		private int slot(long s) {
+			int mask= table.length - 1;
+			int k= (int) ((s * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+			while (table[k] != 0 && seeds[table[k] - 1] != s) {
+				k= (k + 1) & mask;
+			}
+			return k;
+		}
+	}
+
+	private final FileChannel channel;
+	private final SeedIndex index;
+	private final long[] offsets;
+
+	/** The buffer each thread reads entries into, grown as needed. */
+	private final ThreadLocal<ByteBuffer> entryBuffer= new ThreadLocal<>();
+
+	/** Constructor: the archive read through ch, whose entries are numbered by idx <br>
+	 * and are at offsets off. */
+	private CavernArchive(FileChannel ch, SeedIndex idx, long[] off) {
+		channel= ch;
+		index= idx;
+		offsets= off;
+	}
+
+	/** Open the archive file for reading. <br>
+	 * Throw an IllegalArgumentException if file is not an archive. */
+	public static CavernArchive open(Path file) throws IOException {
+		FileChannel ch= FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			SeedIndex idx= new SeedIndex();
+			return new CavernArchive(ch, idx, readIndex(ch, idx, archiveEnd(ch)));
+		} catch (IOException | RuntimeException e) {
+			ch.close();
+			throw e;
+		}
+	}
+
+	/** Return the end of the archive held by ch: the size of the file if it ends with a <br>
+	 * footer and otherwise the end of its last footer (the bytes after it were being <br>
+	 * added by a writer that was not closed). <br>
+	 * Throw an IllegalArgumentException if ch does not hold an archive. */
+	private static long archiveEnd(FileChannel ch) throws IOException {
+		long size= ch.size();
+		if (size < HEADER_BYTES + FOOTER_BYTES) {
+			throw new IllegalArgumentException("Not an archive");
+		}
+		ByteBuffer header= readFully(ch, 0, HEADER_BYTES);
+		if (header.getInt() != MAGIC) throw new IllegalArgumentException("Not an archive");
+		short version= header.getShort();
+		if (version != VERSION) {
+			throw new IllegalArgumentException("Unsupported archive version " + version);
+		}
+		if (isFooterEnd(ch, size)) return size;
+
+		// Look for the last MAGIC that ends a footer, a chunk at a time from the end.
+		ByteBuffer chunk= ByteBuffer.allocate(1 << 16);
+		long hi= size;
+		while (hi >= HEADER_BYTES + FOOTER_BYTES) {
+			long lo= Math.max(HEADER_BYTES, hi - chunk.capacity());
+			chunk.clear().limit((int) (hi - lo));
+			while (chunk.hasRemaining()) {
+				if (ch.read(chunk, lo + chunk.position()) < 0) break;
+			}
+			// The footer ending at e has MAGIC at e-4..e-1, within lo..hi-1.
+			for (long e= hi; e - 4 >= lo && e >= HEADER_BYTES + FOOTER_BYTES; e-- ) {
+				if (chunk.getInt((int) (e - 4 - lo)) == MAGIC && isFooterEnd(ch, e)) return e;
+			}
+			hi= lo + 3;
+			if (lo == HEADER_BYTES) break;
+		}
+		throw new IllegalArgumentException("Not a complete archive");
+	}
+
+	/** Return true iff the FOOTER_BYTES bytes of ch before position e are a footer <br>
+	 * whose index ends just before it. */
+	private static boolean isFooterEnd(FileChannel ch, long e) throws IOException {
+		ByteBuffer footer= readFully(ch, e - FOOTER_BYTES, FOOTER_BYTES);
+		long indexAt= footer.getLong();
+		int n= footer.getInt();
+		return footer.getInt() == MAGIC && n >= 0 && indexAt >= HEADER_BYTES &&
+			indexAt + 16L * n + FOOTER_BYTES == e;
+	}
+
+	/** Add the seeds of the archive read through ch, which ends at position end, to idx, <br>
+	 * in the order they were added, and return the offsets of their entries (possibly <br>
+	 * with unused elements at the end). <br>
+	 * Precondition: end is archiveEnd(ch). */
+	private static long[] readIndex(FileChannel ch, SeedIndex idx, long end) throws IOException {
+		ByteBuffer footer= readFully(ch, end - FOOTER_BYTES, FOOTER_BYTES);
+		long indexAt= footer.getLong();
+		int n= footer.getInt();
+		long[] off= new long[Math.max(n, 16)];
+		ByteBuffer buf= null;
+		for (int i= 0; i < n; ) {
+			int m= Math.min(n - i, INDEX_CHUNK_BYTES / 16);
+			buf= readFully(ch, indexAt + 16L * i, 16 * m, buf);
+			for (int k= 0; k < m; k++ ) {
+				idx.add(buf.getLong());
+				off[i]= buf.getLong();
+				i++ ;
+			}
+		}
+		return off;
+	}
+
+	/** Return the length bytes of ch starting at position pos, as a buffer at position 0. */
+	private static ByteBuffer readFully(FileChannel ch, long pos, int length) throws IOException {
+		return readFully(ch, pos, length, null);
+	}
+
+	/** Return the length bytes of ch starting at position pos, as a buffer at position 0. <br>
+	 * The buffer is buf if it is not null and has room for them, and otherwise a new one. */
+	private static ByteBuffer readFully(FileChannel ch, long pos, int length, ByteBuffer buf)
+		throws IOException {
+		if (buf == null || buf.capacity() < length) buf= ByteBuffer.allocate(length);
+		buf.clear().limit(length);
+		while (buf.hasRemaining()) {
+			if (ch.read(buf, pos + buf.position()) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	/** Return the number of entries in this archive. */
+	public int size() {
+		return index.size();
+	}
+
+	/** Return true iff this archive has an entry for seed s. */
+	public boolean contains(long s) {
+		return index.find(s) >= 0;
+	}
+
+	/** Return the entry for seed s, or null if this archive has none. */
+	public Entry getEntry(long s) {
+		int i= index.find(s);
+		return i < 0 ? null : new Entry(this, s, offsets[i]);
+	}
+
+	/** Return the caverns stored for seed s (hunt first, scram second), <br>
+	 * or null if this archive has none. */
+	public Pair<Cavern, Cavern> get(long s) {
+		Entry e= getEntry(s);
+		return e == null ? null : e.read();
+	}
+
+	/** Return an iterator over the entries of this archive, in the order they were added. <br>
+	 * It reads no caverns: each Entry reads its own when asked. */
+	@Override
+	public Iterator<Entry> iterator() {
+		return new Iterator<Entry>() {
+			private int i= 0;
+
+			@Override
+			public boolean hasNext() {
+				return i < index.size();
+			}
+
+			@Override
+			public Entry next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				Entry e= new Entry(CavernArchive.this, index.seed(i), offsets[i]);
+				i++ ;
+				return e;
+			}
+		};
+	}
+
+	/** Read and return the caverns of the entry at offset off. */
+	private Pair<Cavern, Cavern> readAt(long off) {
+		try {
+			ByteBuffer header= readFully(channel, off, ENTRY_HEADER_BYTES);
+			header.getLong();
+			int huntBytes= header.getInt();
+			int scramBytes= header.getInt();
+			long length= (long) huntBytes + scramBytes;
+			if (huntBytes < 0 || scramBytes < 0 || length > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Bad archive entry at " + off);
+			}
+			ByteBuffer buf= readFully(channel, off + ENTRY_HEADER_BYTES, (int) length,
+				entryBuffer.get());
+			entryBuffer.set(buf);
+			Cavern hunt= BinaryCavernFormat.read(buf);
+			Cavern scram= BinaryCavernFormat.read(buf);
+			return new Pair<>(hunt, scram);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/** Close this archive. */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/** An instance appends entries to an archive file, one at a time, and writes <br>
+	 * a new index when it is closed. Until then, the file holds the archive as it was <br>
+	 * when the writer was created. Only the index (16 bytes per entry) is kept in memory. */
+	public static class Writer implements Closeable {
+		private final FileChannel channel;
+		private final SeedIndex index= new SeedIndex();
+		private long[] offsets;
+		private long end;
+
+		/** The number of entries of the archive when this writer was created. */
+		private final int committed;
+		/** The position of the footer of the archive when this writer was created. */
+		private final long oldFooter;
+
+		/** Constructor: a writer adding entries to archive file, after its entries. If file <br>
+		 * does not exist or is empty, it becomes an archive with no entries. <br>
+		 * Throw an IllegalArgumentException if file is not empty and not an archive. */
+		public Writer(Path file) throws IOException {
+			channel= FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+			try {
+				if (channel.size() == 0) {
+					offsets= new long[16];
+					ByteBuffer buf= ByteBuffer.allocate(HEADER_BYTES + FOOTER_BYTES);
+					buf.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+					buf.putLong(HEADER_BYTES).putInt(0).putInt(MAGIC).flip();
+					write(buf);
+					channel.force(true);
+				} else {
+					end= archiveEnd(channel);
+					offsets= readIndex(channel, index, end);
+					// Drop what a writer that was not closed added after the archive.
+					channel.truncate(end);
+				}
+				committed= index.size();
+				oldFooter= end - FOOTER_BYTES;
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+		}
+
+		/** Write buf at the end of the file. */
+		private void write(ByteBuffer buf) throws IOException {
+			while (buf.hasRemaining()) {
+				end+= channel.write(buf, end);
+			}
+		}
+
+		/** Add the caverns hunt and scram of the game with seed s. <br>
+		 * Throw an IllegalArgumentException if the archive already has an entry for s. */
+		public void add(long s, Cavern hunt, Cavern scram) throws IOException {
+			if (index.find(s) >= 0) throw new IllegalArgumentException("Duplicate seed " + s);
+			int huntBytes= BinaryCavernFormat.size(hunt);
+			int scramBytes= BinaryCavernFormat.size(scram);
+			ByteBuffer buf= ByteBuffer.allocate(ENTRY_HEADER_BYTES + huntBytes + scramBytes);
+			buf.putLong(s).putInt(huntBytes).putInt(scramBytes);
+			BinaryCavernFormat.write(hunt, buf);
+			BinaryCavernFormat.write(scram, buf);
+			buf.flip();
+
+			if (index.size() == offsets.length) offsets= Arrays.copyOf(offsets, 2 * offsets.length);
+			offsets[index.size()]= end;
+			index.add(s);
+			write(buf);
+		}
+
+		/** Add the caverns GameState generates for the game with seed s. */
+		public void add(long s) throws IOException {
+			Pair<Cavern, Cavern> p= GameState.digCaverns(s);
+			add(s, p.getFirst(), p.getSecond());
+		}
+
+		/** Return the number of entries in the archive. */
+		public int size() {
+			return index.size();
+		}
+
+		/** Write the new index and footer after the new entries, if any were added, and <br>
+		 * close the file. Only once they are on disk is the old footer dropped. */
+		@Override
+		public void close() throws IOException {
+			try {
+				int n= index.size();
+				if (n == committed) return;
+				long indexAt= end;
+				ByteBuffer buf= ByteBuffer.allocate(16 * n + FOOTER_BYTES);
+				for (int i= 0; i < n; i++ ) {
+					buf.putLong(index.seed(i)).putLong(offsets[i]);
+				}
+				buf.putLong(indexAt).putInt(n).putInt(MAGIC).flip();
+				write(buf);
+				channel.force(true);
+
+				// Clear the MAGIC of the old footer so it is never taken for the end.
+				ByteBuffer zero= ByteBuffer.allocate(4);
+				while (zero.hasRemaining()) {
+					channel.write(zero, oldFooter + 12 + zero.position());
+				}
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	/** Add the caverns of games to an archive. args are explained above. */
+	public static void main(String[] args) throws IOException {
+		Path file= Paths.get(args[0]);
+		long[] s= Tournament.seeds(Long.parseLong(args[1]), Integer.parseInt(args[2]));
+		try (Writer w= new Writer(file)) {
+			for (long seed : s) {
+				w.add(seed);
+			}
+			System.out.println(file + " : " + w.size() + " entries");
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package game;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** An instance caches the hunt and scram caverns of games by seed, so that replaying <br>
+ * the same seeds (e.g. against many versions of a hunter) does not generate them again.
+ *
+ * Caverns are kept in memory in least-recently-used order up to a ceiling on their <br>
+ * estimated size, and optionally also on disk, one file per seed and generator version. <br>
+ * get(seed) always returns new copies in which no gold has been taken. <br>
+ * An instance can be shared by games running on several threads. */
+public class CavernCache {
+
+	/** Separates the hunt cavern from the scram cavern in a cache file. */
+	private static final String SEPARATOR= "--";
+
+	/** The master copies of the caverns in memory, least recently used first. */
+	private final LinkedHashMap<Long, Pair<Cavern, Cavern>> memory=
+		new LinkedHashMap<>(16, 0.75f, true);
+
+	private final long maxBytes;
+	private final Path directory;
+	private final Cavern.GenerationMode mode;
+	/** The size of the caverns (null for the usual sizes), as in GameState.largeCavernSize. */
+	private final Pair<Integer, Integer> size;
+	private long bytes;
+
+	private long hits;
+	private long diskHits;
+	private long misses;
+
+	/** Constructor: a cache keeping at most about maxBytes bytes of caverns in memory, <br>
+	 * and also storing caverns in directory dir, unless dir is null. */
+	public CavernCache(long maxBytes, Path dir) {
+		this(maxBytes, dir, Cavern.GenerationMode.LEGACY);
+	}
+
+	/** Constructor: same as CavernCache(maxBytes, dir), for caverns generated in mode m <br>
+	 * with the GameState.largeCavernSize at the time of the call. */
+	public CavernCache(long maxBytes, Path dir, Cavern.GenerationMode m) {
+		this.maxBytes= maxBytes;
+		directory= dir;
+		mode= m;
+		size= GameState.largeCavernSize;
+		if (dir != null) {
+			try {
+				Files.createDirectories(dir);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/** Return the caverns (hunt first, scram second) of the game with seed seed, <br>
+	 * as fresh copies: they are the same as the caverns GameState generates for seed <br>
+	 * in this cache's generation mode and cavern size. */
+	public Pair<Cavern, Cavern> get(long seed) {
+		Pair<Cavern, Cavern> master;
+		synchronized (this) {
+			master= memory.get(seed);
+			if (master != null) hits++ ;
+		}
+
+		if (master == null) {
+			master= load(seed);
+			if (master == null) {
+				master= GameState.digCaverns(seed, mode, size);
+				store(seed, master);
+				synchronized (this) {
+					misses++ ;
+				}
+			} else {
+				synchronized (this) {
+					diskHits++ ;
+				}
+			}
+			// Compute the distance fields once, so that every copy shares them.
+			master.getFirst().warmDistances();
+			master.getSecond().warmDistances();
+			put(seed, master);
+		}
+		return new Pair<>(master.getFirst().copy(), master.getSecond().copy());
+	}
+
+	/** Add master, the caverns for seed, to memory and evict least recently used <br>
+	 * caverns until memory is within maxBytes again. */
+	private synchronized void put(long seed, Pair<Cavern, Cavern> master) {
+		Pair<Cavern, Cavern> old= memory.put(seed, master);
+		if (old != null) bytes-= sizeOf(old);
+		bytes+= sizeOf(master);
+
+		Iterator<Map.Entry<Long, Pair<Cavern, Cavern>>> it= memory.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			Map.Entry<Long, Pair<Cavern, Cavern>> eldest= it.next();
+			bytes-= sizeOf(eldest.getValue());
+			it.remove();
+		}
+	}
+
+	/** Return the estimated memory of the caverns in p. */
+	private static long sizeOf(Pair<Cavern, Cavern> p) {
+		return p.getFirst().estimatedBytes() + p.getSecond().estimatedBytes();
+	}
+
+	/** Return the file of the caverns for seed (null if there is no directory). */
+	private Path file(long seed) {
+		if (directory == null) return null;
+		String m= mode == Cavern.GenerationMode.LEGACY ? "" : mode.name().toLowerCase() + "-";
+		if (size != null) m+= size.getFirst() + "x" + size.getSecond() + "-";
+		return directory.resolve("v" + Cavern.GENERATOR_VERSION + "-" + m + seed + ".cavern");
+	}
+
+	/** Return the caverns for seed stored on disk, or null if they are not there. */
+	private Pair<Cavern, Cavern> load(long seed) {
+		Path f= file(seed);
+		if (f == null || !Files.exists(f)) return null;
+		try {
+			List<String> lines= Files.readAllLines(f);
+			int k= lines.indexOf(SEPARATOR);
+			return new Pair<>(Cavern.deserialize(lines.subList(0, k)),
+				Cavern.deserialize(lines.subList(k + 1, lines.size())));
+		} catch (IOException | RuntimeException e) {
+			// A missing, partial or corrupt file is just a miss.
+			return null;
+		}
+	}
+
+	/** Store the caverns p for seed on disk, if there is a directory. */
+	private void store(long seed, Pair<Cavern, Cavern> p) {
+		Path f= file(seed);
+		if (f == null) return;
+		List<String> lines= new ArrayList<>(p.getFirst().serialize());
+		lines.add(SEPARATOR);
+		lines.addAll(p.getSecond().serialize());
+		Path tmp= null;
+		try {
+			// Write to a temporary file first so that readers never see a partial file.
+			tmp= Files.createTempFile(directory, "v" + Cavern.GENERATOR_VERSION, ".tmp");
+			Files.write(tmp, lines);
+			Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// The disk cache is only an optimization.
+			try {
+				if (tmp != null) Files.deleteIfExists(tmp);
+			} catch (IOException e2) {
+				// Nothing more to do.
+			}
+		}
+	}
+
+	/** Return the number of calls of get that were answered from memory. */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** Return the number of calls of get that were answered from disk. */
+	public synchronized long getDiskHits() {
+		return diskHits;
+	}
+
+	/** Return the number of calls of get that had to generate the caverns. */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/** Return the estimated number of bytes of caverns held in memory. */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/** Return the number of seeds whose caverns are held in memory. */
+	public synchronized int size() {
+		return memory.size();
+	}
+}
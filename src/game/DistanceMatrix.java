@@ -0,0 +1,177 @@
+package game;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** An instance holds the lengths of shortest paths between the nodes of a chosen subset <br>
+ * of a cavern (e.g. the start, the gold tiles and the exit of a scram), and what is needed <br>
+ * to follow those paths.
+ *
+ * The constructor runs Dijkstra's algorithm (a GridDijkstra) once from each node of the <br>
+ * subset: in the calling thread and, to spread the searches, in a pool of daemon threads <br>
+ * shared by all matrices, with at most one thread per processor. It keeps the distances <br>
+ * between the nodes of the subset in one int array and, for each of them, the next hop <br>
+ * from every index toward it in another, so that a path (a GridPath) is only built when <br>
+ * path(i, j) asks for it. <br>
+ * With k nodes in a graph of N indices it takes 4 (k^2 + k N) bytes. <br>
+ * Once constructed, an instance may be used by several threads. */
+public class DistanceMatrix {
+
+	/** Distance between nodes that cannot reach each other. */
+	public static final int UNREACHED= GridDijkstra.UNREACHED;
+
+	/** Threads shared by all matrices, so building many matrices at once (one per game <br>
+	 * of a tournament, say) does not start more threads than there are processors. */
+	private static final ExecutorService POOL= Executors.newFixedThreadPool(
+		Runtime.getRuntime().availableProcessors(), (r) -> {
+			Thread t= new Thread(r, "distance-matrix");
+			t.setDaemon(true);
+			return t;
+		});
+
+	private final GridGraph graph;
+
+	/** nodes[i] is the index in graph of node i of the subset. */
+	private final int[] nodes;
+	/** dist[i * k + j] is the length of a shortest path from node i to node j, where k is <br>
+	 * the number of nodes. */
+	private final int[] dist;
+	/** next[j * N + v] is the index after index v on a shortest path from v to node j, <br>
+	 * or -1 if v is node j or cannot reach it, where N is the size of graph. */
+	private final int[] next;
+
+	/** What a search threw, if any (null if none did). */
+	private volatile Throwable failure;
+
+	/** Constructor: the distances between the nodes of ns (in that order), computed with <br>
+	 * as many threads as there are processors. <br>
+	 * Throw an IllegalArgumentException if ns is empty or its nodes are not all in the <br>
+	 * same cavern, or if the next hops do not fit in an array, and an IllegalStateException <br>
+	 * if the calling thread is interrupted before the matrix is done. */
+	public DistanceMatrix(List<Node> ns) {
+		this(ns, Runtime.getRuntime().availableProcessors());
+	}
+
+	/** Constructor: same as DistanceMatrix(ns), but with at most threads threads, counting <br>
+	 * the calling thread (the calling thread alone if threads <= 1, as is best when the <br>
+	 * caller already runs in parallel with others). */
+	public DistanceMatrix(List<Node> ns, int threads) {
+		if (ns.isEmpty()) throw new IllegalArgumentException("No nodes");
+		graph= ns.get(0).getGridGraph();
+		int k= ns.size();
+		int N= graph.size();
+		if ((long) k * N > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many nodes for a graph of " + N + ": " + k);
+		}
+		nodes= new int[k];
+		for (int i= 0; i < k; i++ ) {
+			Node v= ns.get(i);
+			if (v.getGridGraph() != graph) {
+				throw new IllegalArgumentException("Node not in the cavern: " + v);
+			}
+			nodes[i]= v.getIndex();
+		}
+		dist= new int[k * k];
+		next= new int[k * N];
+
+		int n= Math.max(1, Math.min(threads, k));
+		AtomicInteger sources= new AtomicInteger();
+		CountDownLatch finished= new CountDownLatch(k);
+		for (int w= 1; w < n; w++ ) {
+			POOL.execute(() -> search(sources, finished));
+		}
+		// The calling thread searches too, so the matrix gets done even when POOL is busy
+		// with other matrices.
+		search(sources, finished);
+		if (finished.getCount() != 0) awaitPool(finished);
+		if (failure != null) throw new IllegalStateException("Distance matrix failed", failure);
+	}
+
+	/** Wait until the threads of POOL have finished the searches counted by finished. */
+	private static void awaitPool(CountDownLatch finished) {
+		try {
+			finished.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Distance matrix interrupted", e);
+		}
+	}
+
+	/** Run Dijkstra's algorithm from each node whose number is taken from sources, until <br>
+	 * there are no nodes left, filling its column of dist and its next hops and counting <br>
+	 * down finished once per node. */
+	private void search(AtomicInteger sources, CountDownLatch finished) {
+		int k= nodes.length;
+		int N= graph.size();
+		GridDijkstra engine= null;
+		for (int j= sources.getAndIncrement(); j < k; j= sources.getAndIncrement()) {
+			if (Thread.currentThread().isInterrupted()) {
+				// Take no more sources. Node j is never counted down, so the constructor
+				// waits for the other threads, and that wait throws at once.
+				sources.set(k);
+				return;
+			}
+			try {
+				if (engine == null) engine= new GridDijkstra(graph);
+				// The graph is undirected, so the predecessor of v on a shortest path from
+				// node j to v is the next hop from v toward node j.
+				engine.search(nodes[j], -1, next, j * N);
+				for (int i= 0; i < k; i++ ) {
+					dist[i * k + j]= engine.distanceTo(nodes[i]);
+				}
+			} catch (RuntimeException | Error e) {
+				failure= e;
+			} finally {
+				finished.countDown();
+			}
+		}
+	}
+
+	/** Return the number of nodes in the subset. */
+	public int size() {
+		return nodes.length;
+	}
+
+	/** Return node i of the subset. */
+	public Node node(int i) {
+		return graph.node(nodes[i]);
+	}
+
+	/** Return the length of a shortest path from node i to node j, or UNREACHED if there <br>
+	 * is none. */
+	public int distance(int i, int j) {
+		return dist[i * nodes.length + j];
+	}
+
+	/** Return the index (in the cavern's GridGraph) after index v on a shortest path from <br>
+	 * v to node j, or -1 if v is node j or cannot reach it. */
+	public int nextHop(int v, int j) {
+		return next[j * graph.size() + v];
+	}
+
+	/** Return a shortest path from node v of the cavern to node j, including both, <br>
+	 * or an empty path if there is none. */
+	public GridPath path(Node v, int j) {
+		int u= v.getIndex();
+		int n= 1;
+		for (int w= u; w != nodes[j]; w= nextHop(w, j)) {
+			if (nextHop(w, j) < 0) return new GridPath(graph, new int[0], false);
+			n++ ;
+		}
+		int[] ids= new int[n];
+		ids[0]= u;
+		for (int i= 1; i < n; i++ ) {
+			ids[i]= nextHop(ids[i - 1], j);
+		}
+		return new GridPath(graph, ids, false);
+	}
+
+	/** Return a shortest path from node i to node j, including both, or an empty path <br>
+	 * if there is none. */
+	public GridPath path(int i, int j) {
+		return path(node(i), j);
+	}
+}
@@ -0,0 +1,113 @@
+package game;
+
+/** An instance records where the time of one game (or of many games, once aggregated) goes: <br>
+ * nanoseconds per phase and counts of calls. GameState creates one per game only when <br>
+ * metrics are turned on, so games without metrics pay a null check per event. */
+public final class GameMetrics {
+
+	/** The phases whose wall-clock time is measured. */
+	public enum Timer {
+		/** Generating (or loading) the hunt and scram caverns */
+		GENERATION,
+		/** Shortest-path computations done by the game itself */
+		DIJKSTRA,
+		/** The hunter's huntOrb() */
+		HUNT,
+		/** The hunter's scram() */
+		SCRAM,
+		/** Updating (and waiting for) the GUI */
+		GUI;
+	}
+
+	/** The events that are counted. */
+	public enum Counter {
+		/** Calls of moveTo(long) and moveTo(Node) */
+		MOVE_TO,
+		/** Calls of neighbors() */
+		NEIGHBORS,
+		/** Calls of grabGold() */
+		GRAB_GOLD,
+		/** Shortest-path computations done by the game itself */
+		DIJKSTRA_CALLS,
+		/** Caverns generated, including the ones rejected and generated again */
+		GENERATION_ATTEMPTS;
+	}
+
+	private static final int TIMERS= Timer.values().length;
+	private static final int COUNTERS= Counter.values().length;
+
+	private final long[] nanos= new long[TIMERS];
+	private final long[] counts= new long[COUNTERS];
+	private int games;
+
+	/** Constructor: the metrics of one game, with nothing recorded yet. */
+	public GameMetrics() {
+		games= 1;
+	}
+
+	/** Constructor: an empty aggregate of metrics of no games. */
+	private GameMetrics(int g) {
+		games= g;
+	}
+
+	/** Return an empty aggregate, to which the metrics of games can be added. */
+	public static GameMetrics aggregate() {
+		return new GameMetrics(0);
+	}
+
+	/** Add ns nanoseconds to timer t. */
+	void addNanos(Timer t, long ns) {
+		nanos[t.ordinal()]+= ns;
+	}
+
+	/** Add 1 to counter c. */
+	void increment(Counter c) {
+		counts[c.ordinal()]++ ;
+	}
+
+	/** Add n to counter c. */
+	void add(Counter c, long n) {
+		counts[c.ordinal()]+= n;
+	}
+
+	/** Add all the metrics in m to this aggregate. */
+	public synchronized void addAll(GameMetrics m) {
+		for (int i= 0; i < TIMERS; i++ ) {
+			nanos[i]+= m.nanos[i];
+		}
+		for (int i= 0; i < COUNTERS; i++ ) {
+			counts[i]+= m.counts[i];
+		}
+		games+= m.games;
+	}
+
+	/** Return the number of games these metrics cover. */
+	public int games() {
+		return games;
+	}
+
+	/** Return the nanoseconds recorded for timer t. */
+	public long nanos(Timer t) {
+		return nanos[t.ordinal()];
+	}
+
+	/** Return the value of counter c. */
+	public long count(Counter c) {
+		return counts[c.ordinal()];
+	}
+
+	/** Return these metrics on one line, as space-separated key=value pairs, <br>
+	 * with the timers in microseconds. */
+	@Override
+	public String toString() {
+		StringBuilder sb= new StringBuilder("games=").append(games);
+		for (Timer t : Timer.values()) {
+			sb.append(' ').append(t.name().toLowerCase()).append("_us=")
+				.append(nanos[t.ordinal()] / 1000);
+		}
+		for (Counter c : Counter.values()) {
+			sb.append(' ').append(c.name().toLowerCase()).append('=').append(counts[c.ordinal()]);
+		}
+		return sb.toString();
+	}
+}
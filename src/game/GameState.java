@@ -1,8 +1,8 @@
 package game;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -11,12 +11,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.FutureTask;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
+import app.ExactScramSolver;
 import app.Pollack;
 import gui.GUI;
 
@@ -30,8 +27,22 @@ public class GameState implements HuntState, ScramState {
 	@SuppressWarnings("serial")
 	private static class OutOfStepsException extends RuntimeException {}
 
+	/** Thrown into a hunter that keeps calling the game after its phase timed out. */
+	@SuppressWarnings("serial")
+	private static class PhaseAbortedException extends RuntimeException {}
+
 	static boolean shouldPrint= true;
 
+	/** true iff games created from now on record GameMetrics (off by default) */
+	static boolean collectMetrics= false;
+
+	/** If not null, games created from now on get their caverns from this cache <br>
+	 * instead of generating them (null by default) */
+	static volatile CavernCache cavernCache= null;
+
+	/** How games generate their caverns (LEGACY reproduces the caverns of every seed). */
+	static volatile Cavern.GenerationMode generationMode= Cavern.GenerationMode.LEGACY;
+
 	/** Minimum number of rows */
 	public static final int MIN_ROWS= 8;
 
@@ -44,6 +55,11 @@ public class GameState implements HuntState, ScramState {
 	/** Maximum number of columns */
 	public static final int MAX_COLS= 40;
 
+	/** If not null, games generate caverns with exactly getFirst() rows and getSecond() <br>
+	 * columns instead of MIN_ROWS..MAX_ROWS by MIN_COLS..MAX_COLS, to stress-test hunters <br>
+	 * and the engine on large grids (null by default). Set it with setLargeCavernSize. */
+	static volatile Pair<Integer, Integer> largeCavernSize= null;
+
 	/** Number of seconds before huntOrb times out */
 	public static final long HU_TIMEOUT= 10;
 
@@ -68,8 +84,11 @@ public class GameState implements HuntState, ScramState {
 
 	private final long seed;
 
+	/** The metrics of this game, or null if it does not record them. */
+	private final GameMetrics metrics;
+
 	private Node position;
-	private int stepsTaken;
+	private long stepsTaken;
 	private int stepsRemaining;
 	private int goldCollected;
 
@@ -89,14 +108,29 @@ public class GameState implements HuntState, ScramState {
 
 	private int minStepsToHunt;
 
+	/** true iff the current phase ran out of time and the hunter must stop */
+	private volatile boolean aborted= false;
+
+	/** true iff this game must not print anything (e.g. it is one of many run in parallel) */
+	private boolean quiet= false;
+
+	/** Number of seconds before huntOrb and scram time out in this game. */
+	private final long huntTimeout;
+	private final long scramTimeout;
+
 	/** Constructor: a new GameState object for hunter exp. <br>
 	 * This constructor takes a path to files storing serialized caverns <br>
-	 * and simply loads these caverns. */
+	 * (in the text or the binary format) and simply loads these caverns. */
 	/* package */ GameState(Path huntCavernPath, Path scramCavernPath, Hunter exp)
 		throws IOException {
-		huntCavern= Cavern.deserialize(Files.readAllLines(huntCavernPath));
-		minStepsToHunt= huntCavern.minPathLengthToTarget(huntCavern.getEntrance());
-		scramCavern= Cavern.deserialize(Files.readAllLines(scramCavernPath));
+		metrics= collectMetrics ? new GameMetrics() : null;
+		long start= startTimer();
+		huntCavern= Cavern.load(huntCavernPath);
+		scramCavern= Cavern.load(scramCavernPath);
+		stopTimer(GameMetrics.Timer.GENERATION, start);
+		minStepsToHunt= minPathLength(huntCavern, huntCavern.getEntrance());
+		huntTimeout= scaledTimeout(HU_TIMEOUT, huntCavern);
+		scramTimeout= scaledTimeout(SC_TIMEOUT, scramCavern);
 
 		hunter= exp;
 
@@ -120,14 +154,38 @@ public class GameState implements HuntState, ScramState {
 	/** Constructor: a new game instance using seed seed with or without a GUI, <br>
 	 * and with the hunter used to solve the game. */
 	/* package */ GameState(long seed, boolean useGui, Hunter exp) {
-		Random rand= new Random(seed);
-		int ROWS= rand.nextInt(MAX_ROWS - MIN_ROWS + 1) + MIN_ROWS;
-		int COLS= rand.nextInt(MAX_COLS - MIN_COLS + 1) + MIN_COLS;
-		huntCavern= Cavern.digHuntCavern(ROWS, COLS, rand);
-		minStepsToHunt= huntCavern.minPathLengthToTarget(huntCavern.getEntrance());
-		Tile orbTile= huntCavern.getTarget().getTile();
-		scramCavern= Cavern.digHuntCavern(ROWS, COLS, orbTile.getRow(), orbTile.getColumn(),
-			rand);
+		this(seed, null, useGui, exp);
+	}
+
+	/** Constructor: a new game instance with the caverns stored in archive entry e, <br>
+	 * with or without a GUI, and with the hunter used to solve the game. */
+	/* package */ GameState(CavernArchive.Entry e, boolean useGui, Hunter exp) {
+		this(e.getSeed(), e, useGui, exp);
+	}
+
+	/** Constructor: a new game instance using seed seed, with the caverns of archive <br>
+	 * entry e (or generated for seed if e is null), with or without a GUI, and with <br>
+	 * the hunter used to solve the game. */
+	private GameState(long seed, CavernArchive.Entry e, boolean useGui, Hunter exp) {
+		metrics= collectMetrics ? new GameMetrics() : null;
+		long start= startTimer();
+		CavernCache cache= cavernCache;
+		Pair<Cavern, Cavern> caverns;
+		if (e != null) {
+			caverns= e.read();
+		} else {
+			caverns= cache == null ? digCaverns(seed) : cache.get(seed);
+		}
+		huntCavern= caverns.getFirst();
+		scramCavern= caverns.getSecond();
+		stopTimer(GameMetrics.Timer.GENERATION, start);
+		minStepsToHunt= minPathLength(huntCavern, huntCavern.getEntrance());
+		huntTimeout= scaledTimeout(HU_TIMEOUT, huntCavern);
+		scramTimeout= scaledTimeout(SC_TIMEOUT, scramCavern);
+		if (metrics != null) {
+			metrics.add(GameMetrics.Counter.GENERATION_ATTEMPTS,
+				huntCavern.getGenerationAttempts() + scramCavern.getGenerationAttempts());
+		}
 
 		position= huntCavern.getEntrance();
 		stepsTaken= 0;
@@ -147,18 +205,74 @@ public class GameState implements HuntState, ScramState {
 		}
 	}
 
+	/** Return the hunt cavern (first) and scram cavern (second) of the game with seed seed, <br>
+	 * generated in the current generationMode. */
+	/* package */ static Pair<Cavern, Cavern> digCaverns(long seed) {
+		return digCaverns(seed, generationMode);
+	}
+
+	/** Return the hunt cavern (first) and scram cavern (second) of the game with seed seed, <br>
+	 * generated in mode mode, of the current largeCavernSize. */
+	/* package */ static Pair<Cavern, Cavern> digCaverns(long seed, Cavern.GenerationMode mode) {
+		return digCaverns(seed, mode, largeCavernSize);
+	}
+
+	/** Return the hunt cavern (first) and scram cavern (second) of the game with seed seed, <br>
+	 * generated in mode mode, with large.getFirst() rows and large.getSecond() columns <br>
+	 * (or of the usual random size if large is null). */
+	/* package */ static Pair<Cavern, Cavern> digCaverns(long seed, Cavern.GenerationMode mode,
+		Pair<Integer, Integer> large) {
+		Random rand= new Random(seed);
+		int ROWS= rand.nextInt(MAX_ROWS - MIN_ROWS + 1) + MIN_ROWS;
+		int COLS= rand.nextInt(MAX_COLS - MIN_COLS + 1) + MIN_COLS;
+		if (large != null) {
+			// The sizes above are still drawn, so the rest of rand is used as usual.
+			ROWS= large.getFirst();
+			COLS= large.getSecond();
+		}
+		Cavern hunt= Cavern.digHuntCavern(ROWS, COLS, rand, mode);
+		Tile orbTile= hunt.getTarget().getTile();
+		Cavern scram= Cavern.digHuntCavern(ROWS, COLS, orbTile.getRow(), orbTile.getColumn(),
+			rand, mode);
+		return new Pair<>(hunt, scram);
+	}
+
+	/** Make games created from now on generate caverns of rows x cols tiles, or of the <br>
+	 * usual random sizes if rows and cols are 0. Large caverns are meant to be played <br>
+	 * headless: the GUI draws every tile. <br>
+	 * Throw an IllegalArgumentException if the grid is smaller than 3 x 3 (it must have <br>
+	 * interior tiles) or has more than GridGraph.MAX_TILES tiles. */
+	/* package */ static void setLargeCavernSize(int rows, int cols) {
+		if (rows == 0 && cols == 0) {
+			largeCavernSize= null;
+			return;
+		}
+		if (rows < 3 || cols < 3 || (long) rows * cols > GridGraph.MAX_TILES) {
+			throw new IllegalArgumentException("Cavern size out of range: " + rows + "x" + cols);
+		}
+		largeCavernSize= new Pair<>(rows, cols);
+	}
+
+	/** Return timeout seconds, scaled up in proportion to the number of tiles of c <br>
+	 * if it has more than the largest cavern of the usual sizes. */
+	private static long scaledTimeout(long seconds, Cavern c) {
+		long tiles= (long) c.getRowCount() * c.getColumnCount();
+		long usual= (long) MAX_ROWS * MAX_COLS;
+		return tiles <= usual ? seconds : (seconds * tiles + usual - 1) / usual;
+	}
+
 	/** Run through the game, one step at a time. <br>
 	 * Will run scram() only if hunt() succeeds.<br>
 	 * Will fail in case of timeout. */
 	void runWithTimeLimit() {
 		huntWithTimeLimit();
-		if (!huntSucceeded) {
-			huntStepsLeft= huntCavern.minPathLengthToTarget(position);
-			scramStepsLeft= scramCavern.minPathLengthToTarget(scramCavern.getEntrance());
+		if (!getHuntSucceeded()) {
+			huntStepsLeft= minPathLength(huntCavern, position);
+			scramStepsLeft= minPathLength(scramCavern, scramCavern.getEntrance());
 		} else {
 			scramWithTimeLimit();
-			if (!scramSucceeded) {
-				scramStepsLeft= scramCavern.minPathLengthToTarget(position);
+			if (!getScramSucceeded()) {
+				scramStepsLeft= minPathLength(scramCavern, position);
 				return;
 			}
 
@@ -171,15 +285,15 @@ public class GameState implements HuntState, ScramState {
 	void run() {
 		hunt();
 		if (!huntSucceeded) {
-			huntStepsLeft= huntCavern.minPathLengthToTarget(position);
-			scramStepsLeft= scramCavern.minPathLengthToTarget(scramCavern.getEntrance());
+			huntStepsLeft= minPathLength(huntCavern, position);
+			scramStepsLeft= minPathLength(scramCavern, scramCavern.getEntrance());
 		} else {
 			scram();
 			if (!scramSucceeded) {
-				scramStepsLeft= scramCavern.minPathLengthToTarget(position);
+				scramStepsLeft= minPathLength(scramCavern, position);
 				return;
 			}
-			gui.ifPresent((g) -> g.getOptionsPanel().changePhaseLabel("Scram Succeeded"));
+			withGui((g) -> g.getOptionsPanel().changePhaseLabel("Scram Succeeded"));
 
 		}
 	}
@@ -187,43 +301,27 @@ public class GameState implements HuntState, ScramState {
 	/** Run only the hunt mode. Uses timeout. */
 	void runHuntWithTimeout() {
 		huntWithTimeLimit();
-		if (!huntSucceeded) {
-			huntStepsLeft= huntCavern.minPathLengthToTarget(position);
+		if (!getHuntSucceeded()) {
+			huntStepsLeft= minPathLength(huntCavern, position);
 		}
 	}
 
 	/** Run only the scram mode. Uses timeout. */
 	void runScramWithTimeout() {
 		scramWithTimeLimit();
-		if (!scramSucceeded) {
-			scramStepsLeft= scramCavern.minPathLengthToTarget(position);
+		if (!getScramSucceeded()) {
+			scramStepsLeft= minPathLength(scramCavern, position);
 			return;
 		}
-		gui.ifPresent((g) -> g.getOptionsPanel().changePhaseLabel("Scram Succeeded"));
+		withGui((g) -> g.getOptionsPanel().changePhaseLabel("Scram Succeeded"));
 
 	}
 
-	@SuppressWarnings("deprecation")
 	/** Wraps a call to hunt() with the timeout functionality. */
 	private void huntWithTimeLimit() {
-		FutureTask<Void> ft= new FutureTask<>(new Callable<Void>() {
-			@Override
-			public Void call() {
-				hunt();
-				return null;
-			}
-		});
-
-		Thread t= new Thread(ft);
-		t.start();
-		try {
-			ft.get(HU_TIMEOUT, TimeUnit.SECONDS);
-		} catch (TimeoutException e) {
-			t.stop();
+		aborted= false;
+		if (!PhaseSupervisor.run(this::hunt, huntTimeout, () -> aborted= true)) {
 			huntTimedOut= true;
-		} catch (InterruptedException | ExecutionException e) {
-			System.err.println("ERROR");
-			// Shouldn't happen
 		}
 	}
 
@@ -233,53 +331,46 @@ public class GameState implements HuntState, ScramState {
 		stepsTaken= 0;
 		huntSucceeded= false;
 		position= huntCavern.getEntrance();
-		minHuntDistance= huntCavern.minPathLengthToTarget(position);
-		gui.ifPresent((g) -> g.setLighting(false));
-		gui.ifPresent((g) -> g.updateCavern(huntCavern, 0));
-		gui.ifPresent((g) -> g.moveTo(position));
+		minHuntDistance= minPathLength(huntCavern, position);
+		withGui((g) -> g.setLighting(false));
+		withGui((g) -> g.updateCavern(huntCavern, 0));
+		withGui((g) -> g.moveTo(position));
 
 		try {
-			hunter.huntOrb(this);
+			long start= startTimer();
+			try {
+				hunter.huntOrb(this);
+			} finally {
+				stopTimer(GameMetrics.Timer.HUNT, start);
+			}
+			// A hunter that returns after the phase timed out has not succeeded.
+			if (aborted) return;
 			// Verify that we returned at the correct location
 			if (position.equals(huntCavern.getTarget())) {
 				huntSucceeded= true;
 			} else {
-				errPrintln("Your solution to hunt returned at the wrong location.");
-				gui.ifPresent((g) -> g
+				gameErrPrintln("Your solution to hunt returned at the wrong location.");
+				withGui((g) -> g
 					.displayError("Your solution to hunt returned at the wrong location."));
 			}
+		} catch (PhaseAbortedException e) {
+			return;
 		} catch (Throwable t) {
-			if (t instanceof ThreadDeath) return;
-			errPrintln("Your code errored during the hunt phase.");
-			gui.ifPresent((g) -> g.displayError(
+			if (aborted) return;
+			gameErrPrintln("Your code errored during the hunt phase.");
+			withGui((g) -> g.displayError(
 				"Your code errored during the hunt phase. Please see console output."));
-			errPrintln("Here is the error that occurred.");
-			t.printStackTrace();
+			gameErrPrintln("Here is the error that occurred.");
+			if (!quiet) t.printStackTrace();
 			huntErrored= true;
 		}
 	}
 
-	@SuppressWarnings("deprecation")
 	/** Wrap a call to scram() with the timeout functionality. */
 	private void scramWithTimeLimit() {
-		FutureTask<Void> ft= new FutureTask<>(new Callable<Void>() {
-			@Override
-			public Void call() {
-				scram();
-				return null;
-			}
-		});
-
-		Thread t= new Thread(ft);
-		t.start();
-		try {
-			ft.get(SC_TIMEOUT, TimeUnit.SECONDS);
-		} catch (TimeoutException e) {
-			t.stop();
+		aborted= false;
+		if (!PhaseSupervisor.run(this::scram, scramTimeout, () -> aborted= true)) {
 			scramTimedOut= true;
-		} catch (InterruptedException | ExecutionException e) {
-			System.err.println("ERROR");
-			// Shouldn't happen
 		}
 	}
 
@@ -288,57 +379,111 @@ public class GameState implements HuntState, ScramState {
 		stage= Stage.SCRAM;
 		Tile orbTile= huntCavern.getTarget().getTile();
 		position= scramCavern.getNodeAt(orbTile.getRow(), orbTile.getColumn());
-		minScramDistance= scramCavern.minPathLengthToTarget(position);
+		minScramDistance= minPathLength(scramCavern, position);
 		stepsRemaining= computeStepsToScram();
-		gui.ifPresent((g) -> g.getOptionsPanel().changePhaseLabel("Scramming"));
-		gui.ifPresent((g) -> g.setLighting(true));
-		gui.ifPresent((g) -> g.updateCavern(scramCavern, stepsRemaining));
+		withGui((g) -> g.getOptionsPanel().changePhaseLabel("Scramming"));
+		withGui((g) -> g.setLighting(true));
+		withGui((g) -> g.updateCavern(scramCavern, stepsRemaining));
 
 		try {
 			if (position.getTile().gold() > 0) grabGold();
-			hunter.scram(this);
+			long start= startTimer();
+			try {
+				hunter.scram(this);
+			} finally {
+				stopTimer(GameMetrics.Timer.SCRAM, start);
+			}
+			// A hunter that returns after the phase timed out has not succeeded.
+			if (aborted) return;
 			// Verify that we returned at the correct location
 			if (position.equals(scramCavern.getTarget())) {
 				scramSucceeded= true;
-				gui.ifPresent((g) -> g.getOptionsPanel().changePhaseLabel("Scram Succeeded"));
+				withGui((g) -> g.getOptionsPanel().changePhaseLabel("Scram Succeeded"));
 			} else {
-				errPrintln("Your solution to scram returned at the wrong location.");
-				gui.ifPresent((g) -> g
+				gameErrPrintln("Your solution to scram returned at the wrong location.");
+				withGui((g) -> g
 					.displayError("Your solution to scram returned at the wrong location."));
 			}
 		} catch (OutOfStepsException e) {
-			errPrintln("Your solution to scram ran out of steps before returning!");
-			gui.ifPresent((g) -> g
+			gameErrPrintln("Your solution to scram ran out of steps before returning!");
+			withGui((g) -> g
 				.displayError("Your solution to scram ran out of steps before returning!"));
+		} catch (PhaseAbortedException e) {
+			return;
 		} catch (Throwable t) {
-			if (t instanceof ThreadDeath) return;
-			errPrintln("Your code errored during the scram phase.");
-			gui.ifPresent((g) -> g.displayError(
+			if (aborted) return;
+			gameErrPrintln("Your code errored during the scram phase.");
+			withGui((g) -> g.displayError(
 				"Your code errored during the scram phase. Please see console output."));
-			t.printStackTrace();
+			if (!quiet) t.printStackTrace();
 			scramErrored= true;
 		}
 
-		outPrintln("Gold collected   : " + getGoldCollected());
+		gameOutPrintln("Gold collected   : " + getGoldCollected());
 		DecimalFormat df= new DecimalFormat("#.##");
-		outPrintln("Bonus multiplier : " + df.format(computeBonusFactor()));
-		outPrintln("Score            : " + getScore());
+		gameOutPrintln("Bonus multiplier : " + df.format(computeBonusFactor()));
+		gameOutPrintln("Score            : " + getScore());
+	}
+
+	/** Return the length of a shortest path from n to the target of cavern c, <br>
+	 * recording the time and the call in the metrics. */
+	private int minPathLength(Cavern c, Node n) {
+		long start= startTimer();
+		int d= c.minPathLengthToTarget(n);
+		stopTimer(GameMetrics.Timer.DIJKSTRA, start);
+		count(GameMetrics.Counter.DIJKSTRA_CALLS);
+		return d;
+	}
+
+	/** Perform action on the GUI, if there is one, recording the time it takes. */
+	private void withGui(Consumer<GUI> action) {
+		if (!gui.isPresent()) return;
+		long start= startTimer();
+		action.accept(gui.get());
+		stopTimer(GameMetrics.Timer.GUI, start);
+	}
+
+	/** Return the time to pass to stopTimer: the current time if metrics are recorded. */
+	private long startTimer() {
+		return metrics == null ? 0 : System.nanoTime();
+	}
+
+	/** Add the time since start (from startTimer()) to timer t, if metrics are recorded. */
+	private void stopTimer(GameMetrics.Timer t, long start) {
+		if (metrics != null) metrics.addNanos(t, System.nanoTime() - start);
+	}
+
+	/** Add 1 to counter c, if metrics are recorded. */
+	private void count(GameMetrics.Counter c) {
+		if (metrics != null) metrics.increment(c);
+	}
+
+	/** Throw a PhaseAbortedException if the current phase ran out of time. <br>
+	 * Every method of HuntState and ScramState calls this first, so a hunter <br>
+	 * that is still running after a timeout stops at its next call. */
+	private void checkNotAborted() {
+		if (aborted) throw new PhaseAbortedException();
 	}
 
 	/** Making sure the hunter always has the minimum steps needed to scram, <br>
-	 * add a factor of extra steps proportional to the size of the cavern. */
+	 * add a factor of extra steps proportional to the size of the cavern. <br>
+	 * In a cavern so large that this exceeds Integer.MAX_VALUE, return Integer.MAX_VALUE. */
 	private int computeStepsToScram() {
-		int minScamSteps= scramCavern.minPathLengthToTarget(position);
-		return (int) (minScamSteps + EXTRA_STEPS_FACTOR *
-			(Cavern.MAX_EDGE_WEIGHT + 1) * scramCavern.numOpenTiles() / 2);
+		return scramSteps(minPathLength(scramCavern, position), scramCavern.numOpenTiles());
+	}
 
+	/** Return the steps given to scram from a node whose shortest path to the exit has <br>
+	 * length minSteps, in a cavern with open open tiles (see computeStepsToScram). */
+	/* package */ static int scramSteps(int minSteps, int open) {
+		double steps= minSteps + EXTRA_STEPS_FACTOR * (Cavern.MAX_EDGE_WEIGHT + 1) * open / 2;
+		return (int) Math.min(steps, Integer.MAX_VALUE);
 	}
 
 	/** Compare the hunter's performance on the hunt() stage to the <br>
 	 * theoretical minimum, compute their bonus factor on a call from MIN_BONUS to MAX_BONUS. <br>
 	 * Bonus should be minimum if take longer than NO_BONUS_LENGTH times optimal. */
 	private double computeBonusFactor() {
-		double huntDiff= (stepsTaken - minStepsToHunt) / (double) minStepsToHunt;
+		double huntDiff= (stepsTaken - (double) minStepsToHunt) / minStepsToHunt;
 		if (huntDiff <= 0) return MAX_BONUS;
 		double multDiff= MAX_BONUS - MIN_BONUS;
 		return Math.max(MIN_BONUS, MAX_BONUS - huntDiff / NO_BONUS_LENGTH * multDiff);
@@ -349,16 +494,21 @@ public class GameState implements HuntState, ScramState {
 	 * @param id The Id of the neighboring Node to move to */
 	@Override
 	public void moveTo(long id) {
+		checkNotAborted();
+		count(GameMetrics.Counter.MOVE_TO);
 		if (stage != Stage.HUNT) {
 			throw new IllegalStateException("moveTo(ID) can only be called while exploring!");
 		}
 
-		for (Node n : position.getNeighbors()) {
+		GridGraph g= huntCavern.getAdjacency();
+		int i= g.index(position);
+		for (int s= g.offset(i), end= g.offset(i + 1); s < end; s++ ) {
+			Node n= g.node(g.neighbor(s));
 			if (n.getId() == id) {
 				position= n;
 				stepsTaken++ ;
-				gui.ifPresent((g) -> g.updateBonus(computeBonusFactor()));
-				gui.ifPresent((g) -> g.moveTo(n));
+				withGui((gr) -> gr.updateBonus(computeBonusFactor()));
+				withGui((gr) -> gr.moveTo(n));
 				return;
 			}
 		}
@@ -368,6 +518,7 @@ public class GameState implements HuntState, ScramState {
 	/** Return the unique id of the current location. */
 	@Override
 	public long currentLocation() {
+		checkNotAborted();
 		if (stage != Stage.HUNT) {
 			throw new IllegalStateException("getLocation() can only be called while exploring!");
 		}
@@ -379,38 +530,90 @@ public class GameState implements HuntState, ScramState {
 	 * unique ID of the node and the distance from that node to the target. */
 	@Override
 	public Collection<NodeStatus> neighbors() {
+		checkNotAborted();
+		count(GameMetrics.Counter.NEIGHBORS);
 		if (stage != Stage.HUNT) {
 			throw new IllegalStateException("getNeighbors() can only be called while exploring!");
 		}
 
-		Collection<NodeStatus> options= new ArrayList<>();
-		for (Node n : position.getNeighbors()) {
-			int distance= computeDistanceToTarget(n.getTile().getRow(), n.getTile().getColumn());
-			options.add(new NodeStatus(n.getId(), distance));
+		long[] ids= new long[GridGraph.MAX_DEGREE];
+		int[] distances= new int[GridGraph.MAX_DEGREE];
+		int k= fillNeighbors(ids, distances);
+		Collection<NodeStatus> options= new ArrayList<>(k);
+		for (int j= 0; j < k; j++ ) {
+			options.add(new NodeStatus(ids[j], distances[j]));
 		}
 		return options;
 	}
 
-	/** Return the Manhattan distance from (row, col) to the target */
-	private int computeDistanceToTarget(int row, int col) {
-		return Math.abs(row - huntCavern.getTarget().getTile().getRow()) +
-			Math.abs(col - huntCavern.getTarget().getTile().getColumn());
+	@Override
+	public int neighbors(long[] ids, int[] distances) {
+		checkNotAborted();
+		count(GameMetrics.Counter.NEIGHBORS);
+		if (stage != Stage.HUNT) {
+			throw new IllegalStateException("getNeighbors() can only be called while exploring!");
+		}
+
+		return fillNeighbors(ids, distances);
+	}
+
+	/** Store the ids of the neighbors of position and their grid distances to the <br>
+	 * target in ids and distances and return how many neighbors there are. */
+	private int fillNeighbors(long[] ids, int[] distances) {
+		GridGraph g= huntCavern.getAdjacency();
+		int i= g.index(position);
+		int k= 0;
+		for (int s= g.offset(i), end= g.offset(i + 1); s < end; s++ ) {
+			Node n= g.node(g.neighbor(s));
+			ids[k]= n.getId();
+			distances[k]= distanceToOrb(n);
+			k++ ;
+		}
+		return k;
+	}
+
+	/** Return the Manhattan distance from node n of the hunt cavern to the orb. */
+	private int distanceToOrb(Node n) {
+		Tile t= n.getTile();
+		Tile orb= huntCavern.getTarget().getTile();
+		return Math.abs(t.getRow() - orb.getRow()) + Math.abs(t.getColumn() - orb.getColumn());
 	}
 
 	/** Return the Manhattan distance from the current location to the <br>
 	 * target location on the map. */
 	@Override
 	public int distanceToOrb() {
+		checkNotAborted();
 		if (stage != Stage.HUNT) {
 			throw new IllegalStateException(
 				"getDistanceToTarget() can only be called while exploring!");
 		}
 
-		return computeDistanceToTarget(position.getTile().getRow(), position.getTile().getColumn());
+		return distanceToOrb(position);
+	}
+
+	@Override
+	public int getRowCount() {
+		checkNotAborted();
+		if (stage != Stage.HUNT) {
+			throw new IllegalStateException("getRowCount() can only be called while exploring!");
+		}
+		return huntCavern.getRowCount();
+	}
+
+	@Override
+	public int getColumnCount() {
+		checkNotAborted();
+		if (stage != Stage.HUNT) {
+			throw new IllegalStateException(
+				"getColumnCount() can only be called while exploring!");
+		}
+		return huntCavern.getColumnCount();
 	}
 
 	@Override
 	public Node currentNode() {
+		checkNotAborted();
 		if (stage != Stage.SCRAM) {
 			throw new IllegalStateException("getCurrentNode: Error, " +
 				"current Node may not be accessed unless in SCRAM");
@@ -420,6 +623,7 @@ public class GameState implements HuntState, ScramState {
 
 	@Override
 	public Node getExit() {
+		checkNotAborted();
 		if (stage != Stage.SCRAM) {
 			throw new IllegalStateException("getEntrance: Error, " +
 				"current Node may not be accessed unless in SCRAM");
@@ -429,6 +633,7 @@ public class GameState implements HuntState, ScramState {
 
 	@Override
 	public Collection<Node> allNodes() {
+		checkNotAborted();
 		if (stage != Stage.SCRAM) {
 			throw new IllegalStateException("getVertices: Error, " +
 				"Vertices may not be accessed unless in SCRAM");
@@ -441,6 +646,8 @@ public class GameState implements HuntState, ScramState {
 	 * Increment the steps taken if successful. */
 	@Override
 	public void moveTo(Node n) {
+		checkNotAborted();
+		count(GameMetrics.Counter.MOVE_TO);
 		if (stage != Stage.SCRAM) {
 			throw new IllegalStateException("moveTo(Node) can only be called when scramming!");
 		}
@@ -450,8 +657,8 @@ public class GameState implements HuntState, ScramState {
 		if (position.getNeighbors().contains(n)) {
 			position= n;
 			stepsRemaining-= distance;
-			gui.ifPresent((g) -> g.updateStepsLeft(stepsRemaining));
-			gui.ifPresent((g) -> g.moveTo(n));
+			withGui((g) -> g.updateStepsLeft(stepsRemaining));
+			withGui((g) -> g.moveTo(n));
 			if (position.getTile().gold() > 0) grabGold();
 		} else {
 			throw new IllegalArgumentException("moveTo: Node must be adjacent to position");
@@ -460,17 +667,22 @@ public class GameState implements HuntState, ScramState {
 
 	@Override
 	public void grabGold() {
+		checkNotAborted();
+		count(GameMetrics.Counter.GRAB_GOLD);
 		if (stage != Stage.SCRAM) {
 			throw new IllegalStateException("pickUpGold() can only be called while scramming!");
 		} else if (position.getTile().gold() <= 0) {
 			throw new IllegalStateException("pickUpGold: Error, no gold on this tile");
 		}
-		goldCollected+= position.getTile().takeGold();
-		gui.ifPresent((g) -> g.updateCoins(goldCollected, getScore()));
+		// Saturate rather than overflow in a large cavern.
+		goldCollected= (int) Math.min((long) goldCollected + position.getTile().takeGold(),
+			Integer.MAX_VALUE);
+		withGui((g) -> g.updateCoins(goldCollected, getScore()));
 	}
 
 	@Override
 	public int stepsLeft() {
+		checkNotAborted();
 		if (stage != Stage.SCRAM) {
 			throw new IllegalStateException(
 				"getStepsRemaining() can be called only while scramming!");
@@ -482,17 +694,20 @@ public class GameState implements HuntState, ScramState {
 		return goldCollected;
 	}
 
-	/** Return the player's current score. */
+	/** Return the player's current score (at most Integer.MAX_VALUE). */
 	/* package */ int getScore() {
 		return (int) (computeBonusFactor() * goldCollected);
 	}
 
+	/** Return true iff the hunt succeeded in time. <br>
+	 * After a timeout the phase thread may still be running, so its flag is not trusted. */
 	/* package */ boolean getHuntSucceeded() {
-		return huntSucceeded;
+		return !huntTimedOut && huntSucceeded;
 	}
 
+	/** Return true iff the scram succeeded in time (see getHuntSucceeded()). */
 	/* package */ boolean getScramSucceeded() {
-		return scramSucceeded;
+		return !scramTimedOut && scramSucceeded;
 	}
 
 	/* package */ boolean getHuntErrored() {
@@ -527,9 +742,19 @@ public class GameState implements HuntState, ScramState {
 		return scramStepsLeft;
 	}
 
+	/** Return the metrics of this game, or null if it does not record them. */
+	/* package */ GameMetrics getMetrics() {
+		return metrics;
+	}
+
 	/** Given seed, whether or not to use the GUI, and an instance <br>
 	 * of a solution to use, run the game. */
 	public static int runNewGame(long seed, boolean useGui, Hunter solution) {
+		return playNewGame(seed, useGui, solution).getScore();
+	}
+
+	/** Same as runNewGame, but return the finished game instead of its score. */
+	private static GameState playNewGame(long seed, boolean useGui, Hunter solution) {
 		GameState state;
 		if (seed != 0) {
 			state= new GameState(seed, useGui, solution);
@@ -538,10 +763,34 @@ public class GameState implements HuntState, ScramState {
 		}
 		outPrintln("Seed : " + state.seed);
 		state.run();
-		return state.getScore();
+		return state;
 	}
 
-	/** Run program in headless mode. args are explained elsewhere. */
+	/** Play the game stored in archive entry e with solution and return the finished game. */
+	private static GameState playArchivedGame(CavernArchive.Entry e, Hunter solution) {
+		GameState state= new GameState(e, false, solution);
+		outPrintln("Seed : " + state.seed);
+		state.run();
+		return state;
+	}
+
+	/** Run program in headless mode. args are explained elsewhere. <br>
+	 * With -p k, the -n games are played by k worker threads and only the <br>
+	 * aggregate is printed (add -v to also print one line per seed). <br>
+	 * With -m, each game records GameMetrics, which are printed per game <br>
+	 * and aggregated over all games. <br>
+	 * With -c [dir], caverns come from a CavernCache (stored in dir too, if given) <br>
+	 * holding at most -cmb megabytes in memory (256 by default). <br>
+	 * With -g incremental, caverns are generated in Cavern.GenerationMode.INCREMENTAL <br>
+	 * (different caverns than the default -g legacy for the same seed). <br>
+	 * With -size RxC (e.g. -size 1000x1000), caverns have R rows and C columns instead <br>
+	 * of the usual sizes, to stress-test the hunter and the engine. <br>
+	 * With -a file, the games are the entries of CavernArchive file: all of them, <br>
+	 * in order, or only the one for -s seed if given. <br>
+	 * The hunter is a Pollack, with its default settings except for: -hunt dfs <br>
+	 * (or frontier), -path astar (or dijkstra, bidirectional), -noplan to scram by a <br>
+	 * shortest path, -exact k to plan exactly up to k gold tiles, and -plan ms to plan <br>
+	 * a scram for ms milliseconds (see Pollack.Settings). */
 	public static void main(String[] args) throws IOException {
 		List<String> argList= new ArrayList<>(Arrays.asList(args));
 		int repeatNumberIndex= argList.indexOf("-n");
@@ -567,20 +816,189 @@ public class GameState implements HuntState, ScramState {
 			}
 		}
 
-		int totalScore= 0;
+		collectMetrics= argList.contains("-m");
+
+		int modeIndex= argList.indexOf("-g");
+		if (modeIndex >= 0) {
+			try {
+				generationMode= Cavern.GenerationMode
+					.valueOf(argList.get(modeIndex + 1).toUpperCase());
+			} catch (RuntimeException e) {
+				errPrintln("Error, -g must be followed by legacy or incremental");
+				return;
+			}
+		}
+
+		int sizeIndex= argList.indexOf("-size");
+		if (sizeIndex >= 0) {
+			try {
+				String[] rc= argList.get(sizeIndex + 1).toLowerCase().split("x");
+				setLargeCavernSize(Integer.parseInt(rc[0]), Integer.parseInt(rc[1]));
+			} catch (RuntimeException e) {
+				errPrintln("Error, -size must be followed by rowsxcols, e.g. 1000x1000");
+				return;
+			}
+		}
+
+		Pollack.Settings settings= pollackSettings(argList);
+		if (settings == null) return;
+
+		int cacheIndex= argList.indexOf("-c");
+		if (cacheIndex >= 0) {
+			long megabytes= 256;
+			int mbIndex= argList.indexOf("-cmb");
+			if (mbIndex >= 0) {
+				try {
+					megabytes= Long.parseLong(argList.get(mbIndex + 1));
+				} catch (Exception e) {
+					// megabytes = 256
+				}
+			}
+			Path dir= null;
+			if (cacheIndex + 1 < argList.size() && !argList.get(cacheIndex + 1).startsWith("-")) {
+				dir= Paths.get(argList.get(cacheIndex + 1));
+			}
+			cavernCache= new CavernCache(megabytes << 20, dir, generationMode);
+		}
+
+		int archiveIndex= argList.indexOf("-a");
+		if (archiveIndex >= 0) {
+			if (archiveIndex + 1 >= argList.size()) {
+				errPrintln("Error, -a must be followed by an archive file");
+				return;
+			}
+			Path file= Paths.get(argList.get(archiveIndex + 1));
+			try (CavernArchive archive= CavernArchive.open(file)) {
+				List<CavernArchive.Entry> entries= new ArrayList<>();
+				if (seedIndex >= 0) {
+					CavernArchive.Entry e= archive.getEntry(seed);
+					if (e == null) {
+						errPrintln("Error, the archive has no entry for seed " + seed);
+						return;
+					}
+					entries.add(e);
+				} else {
+					archive.forEach(entries::add);
+				}
+
+				long totalScore= 0;
+				for (CavernArchive.Entry e : entries) {
+					totalScore+= playArchivedGame(e, new Pollack(settings)).getScore();
+					outPrintln("");
+				}
+				outPrintln("Average score : " + totalScore / Math.max(entries.size(), 1));
+			}
+			return;
+		}
+
+		int parallelIndex= argList.indexOf("-p");
+		if (parallelIndex >= 0) {
+			int workers;
+			try {
+				workers= Math.max(Integer.parseInt(argList.get(parallelIndex + 1)), 1);
+			} catch (Exception e) {
+				workers= Runtime.getRuntime().availableProcessors();
+			}
+			// The games already run in parallel: one thread per scram's distances.
+			if (workers > 1) settings.scramThreads= 1;
+			Tournament t= Tournament.run(Tournament.seeds(seed, numTimesToRun), workers,
+				() -> new Pollack(settings));
+			if (argList.contains("-v")) {
+				for (Tournament.Result r : t.getResults()) {
+					System.out.println(r);
+				}
+			}
+			System.out.println(t.summary());
+			if (collectMetrics) System.out.println("Metrics        : " + t.getMetrics());
+			return;
+		}
+
+		long totalScore= 0;
+		GameMetrics allMetrics= GameMetrics.aggregate();
 		for (int i= 0; i < numTimesToRun; i++ ) {
-			totalScore+= runNewGame(seed, false, new Pollack());
+			GameState state= playNewGame(seed, false, new Pollack(settings));
+			totalScore+= state.getScore();
+			if (collectMetrics) {
+				outPrintln("Metrics          : " + state.getMetrics());
+				allMetrics.addAll(state.getMetrics());
+			}
 			if (seed != 0) seed= new Random(seed).nextLong();
 			outPrintln("");
 		}
 
 		outPrintln("Average score : " + totalScore / numTimesToRun);
+		if (collectMetrics) outPrintln("Total metrics : " + allMetrics);
+	}
+
+	/** Make this game print nothing to System.out or System.err iff q. */
+	/* package */ void setQuiet(boolean q) {
+		quiet= q;
+	}
+
+	/** Print s to System.out unless this game is quiet. */
+	private void gameOutPrintln(String s) {
+		if (!quiet) outPrintln(s);
+	}
+
+	/** Print s to System.err unless this game is quiet. */
+	private void gameErrPrintln(String s) {
+		if (!quiet) errPrintln(s);
 	}
 
 	static void outPrintln(String s) {
 		if (shouldPrint) System.out.println(s);
 	}
 
+	/** Return the settings of the Pollacks given by the options in argList (see main), <br>
+	 * or print an error and return null if an option is malformed. */
+	private static Pollack.Settings pollackSettings(List<String> argList) {
+		Pollack.Settings s= new Pollack.Settings();
+		int huntIndex= argList.indexOf("-hunt");
+		if (huntIndex >= 0) {
+			String h= huntIndex + 1 < argList.size() ? argList.get(huntIndex + 1) : "";
+			if (!h.equals("dfs") && !h.equals("frontier")) {
+				errPrintln("Error, -hunt must be followed by frontier or dfs");
+				return null;
+			}
+			s.frontierHunt= h.equals("frontier");
+		}
+		int pathIndex= argList.indexOf("-path");
+		if (pathIndex >= 0) {
+			try {
+				s.shortestMode= app.Path.Mode.valueOf(argList.get(pathIndex + 1).toUpperCase());
+			} catch (RuntimeException e) {
+				errPrintln("Error, -path must be followed by dijkstra, astar or bidirectional");
+				return null;
+			}
+		}
+		s.planScram= !argList.contains("-noplan");
+		int exactIndex= argList.indexOf("-exact");
+		if (exactIndex >= 0) {
+			int k= -1;
+			try {
+				k= Integer.parseInt(argList.get(exactIndex + 1));
+			} catch (RuntimeException e) {
+				// k = -1
+			}
+			if (k < 0 || k > ExactScramSolver.MAX_EXACT_GOLD) {
+				errPrintln("Error, -exact must be followed by a number of gold tiles in 0.." +
+					ExactScramSolver.MAX_EXACT_GOLD);
+				return null;
+			}
+			s.exactScramMaxGold= k;
+		}
+		int planIndex= argList.indexOf("-plan");
+		if (planIndex >= 0) {
+			try {
+				s.scramPlanMillis= Long.parseLong(argList.get(planIndex + 1));
+			} catch (RuntimeException e) {
+				errPrintln("Error, -plan must be followed by a number of milliseconds");
+				return null;
+			}
+		}
+		return s;
+	}
+
 	static void errPrintln(String s) {
 		if (shouldPrint) System.err.println(s);
 	}
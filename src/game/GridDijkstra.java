@@ -0,0 +1,90 @@
+package game;
+
+import java.util.Arrays;
+
+/** An instance is a Dijkstra engine over the GridGraph of a cavern.<br>
+ * Nodes are identified by their index in the graph, so the distance array and heap <br>
+ * have one element per open tile. The search reads the flat arrays of the graph, and <br>
+ * the distance array and heap are reused across searches, so a search allocates <br>
+ * nothing per relaxation. <br>
+ * It is the one implementation behind the distances of Cavern and of DistanceMatrix. */
+/* package */ class GridDijkstra {
+
+	/** Distance of an index that has not been reached. */
+	static final int UNREACHED= Integer.MAX_VALUE;
+
+	private final GridGraph graph;
+
+	private final int[] dist;
+	private final InternalMinHeap heap;
+
+	/** Constructor: an engine for graph g. */
+	GridDijkstra(GridGraph g) {
+		graph= g;
+		dist= new int[g.size()];
+		heap= new InternalMinHeap(g);
+	}
+
+	/** Return the index of node n. */
+	int index(Node n) {
+		return graph.index(n);
+	}
+
+	/** Return a new array whose element i is the length of a shortest path from <br>
+	 * index src to index i, or UNREACHED if there is no such path. */
+	synchronized int[] distancesFrom(int src) {
+		search(src, -1, null, 0);
+		return dist.clone();
+	}
+
+	/** Return the length of a shortest path from index src to index dst, <br>
+	 * or UNREACHED if there is no such path. */
+	synchronized int distance(int src, int dst) {
+		return search(src, dst, null, 0);
+	}
+
+	/** Return the length of a shortest path from the src of the last search to index v, <br>
+	 * or UNREACHED if there is no such path (or v was not settled by that search). */
+	int distanceTo(int v) {
+		return dist[v];
+	}
+
+	/** Run Dijkstra's algorithm from index src, filling dist, until index dst is settled <br>
+	 * (or until every reachable index is settled if dst is -1). If pred is not null, <br>
+	 * also set pred[base + v] to the index before v on a shortest path from src to v <br>
+	 * (-1 for src and for indices not reached). <br>
+	 * Return dist[dst], or UNREACHED if dst is -1 or cannot be reached. <br>
+	 * Unlike distancesFrom and distance it is not synchronized: an engine used through <br>
+	 * it must not be shared between threads. */
+	int search(int src, int dst, int[] pred, int base) {
+		int[] offsets= graph.offsets;
+		int[] targets= graph.targets;
+		short[] weights= graph.weights;
+		Arrays.fill(dist, UNREACHED);
+		if (pred != null) Arrays.fill(pred, base, base + graph.size(), -1);
+		heap.clear();
+
+		dist[src]= 0;
+		heap.add(src, 0);
+		while (!heap.isEmpty()) {
+			int u= heap.poll();
+			if (u == dst) { return dist[u]; }
+
+			int du= dist[u];
+			for (int k= offsets[u]; k < offsets[u + 1]; k++ ) {
+				int v= targets[k];
+				int dv= du + weights[k];
+				if (dv < dist[v]) {
+					if (dist[v] == UNREACHED) {
+						heap.add(v, dv);
+					} else {
+						heap.changePriority(v, dv);
+					}
+					dist[v]= dv;
+					if (pred != null) pred[base + v]= u;
+				}
+			}
+		}
+		return UNREACHED;
+	}
+}
@@ -0,0 +1,329 @@
+package game;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/** An instance is the adjacency of a cavern in compressed-sparse-row form.<br>
+ * Every open tile has an index in 0..size()-1, numbering the open tiles in row-major <br>
+ * order; walls have none. cell(i) is row * cols + col of the tile at index i. <br>
+ * The edges leaving index i occupy the slots offset(i)..offset(i+1)-1; <br>
+ * slot s goes to index neighbor(s) and has length weight(s). <br>
+ * Within a node, slots are in the order in which the edges were added, <br>
+ * which is the order of Node.getExits().
+ *
+ * The graph is immutable once built. Node and Edge are views of it: the Edge <br>
+ * objects of a slot are created only when the Node/Edge API asks for them, and so are <br>
+ * the Node objects of walls. The memory used is proportional to the number of open <br>
+ * tiles and edges (plus the walls whose Node was asked for), not to the grid. */
+public final class GridGraph {
+
+	/** Maximum number of edges leaving a node: one per Cavern.Direction. */
+	static final int MAX_DEGREE= 4;
+
+	/** Maximum number of tiles (rows * cols) of a graph, so that slots fit in an int. */
+	static final int MAX_TILES= Integer.MAX_VALUE / MAX_DEGREE;
+
+	final int rows;
+	final int cols;
+
+	/** Element i is row * cols + col of the tile at index i, in increasing order. */
+	private final int[] cells;
+	/** Element i is the first slot of index i; element size() is the number of slots. */
+	final int[] offsets;
+	/** Element s is the index that slot s goes to. */
+	final int[] targets;
+	/** Element s is the length of slot s. */
+	final short[] weights;
+
+	/** Element i is the Node at index i. It does not change once the graph is built, <br>
+	 * so it is read without a lock. */
+	private final Node[] nodes;
+	/** The Nodes of the walls asked for so far, by cell. Guarded by this graph's lock: <br>
+	 * a wall Node is created and attached under it, so a thread that reads it through <br>
+	 * the lock sees it attached. */
+	private final Map<Integer, Node> walls= new HashMap<>();
+	/** Element s is the Edge view of slot s, or null if it has not been asked for yet. */
+	private final Edge[] edges;
+
+	/** Constructor: a graph of rws rows and cls columns over the open nodes ns, <br>
+	 * by index, whose cells are cs, with the given CSR arrays. */
+	private GridGraph(int rws, int cls, Node[] ns, int[] cs, int[] offs, int[] tgts,
+		short[] wts) {
+		rows= rws;
+		cols= cls;
+		cells= cs;
+		offsets= offs;
+		targets= tgts;
+		weights= wts;
+		edges= new Edge[tgts.length];
+		nodes= ns;
+		attachAll();
+	}
+
+	/** Constructor: a graph with the same edges as g over the open nodes in ns. <br>
+	 * The (immutable) arrays of g are shared, not copied. <br>
+	 * Precondition: ns contains a node for each open tile of g, and no others. */
+	GridGraph(GridGraph g, Collection<Node> ns) {
+		rows= g.rows;
+		cols= g.cols;
+		cells= g.cells;
+		offsets= g.offsets;
+		targets= g.targets;
+		weights= g.weights;
+		edges= new Edge[targets.length];
+		nodes= new Node[cells.length];
+		for (Node n : ns) {
+			nodes[index(n.getTile().getRow(), n.getTile().getColumn())]= n;
+		}
+		attachAll();
+	}
+
+	/** Make each node in nodes a view of this graph. */
+	private void attachAll() {
+		for (int i= 0; i < nodes.length; i++ ) {
+			nodes[i].attach(this, i);
+		}
+	}
+
+	/** Return an estimate of the bytes of memory used by the arrays of this graph. */
+	long estimatedBytes() {
+		return 4L * cells.length + 4L * offsets.length + 4L * targets.length +
+			2L * weights.length + 4L * nodes.length + 4L * edges.length;
+	}
+
+	/** Return the number of indexes: the number of open tiles. */
+	public int size() {
+		return nodes.length;
+	}
+
+	/** Return the number of columns of the grid. */
+	public int getColumnCount() {
+		return cols;
+	}
+
+	/** Return the number of rows of the grid. */
+	public int getRowCount() {
+		return rows;
+	}
+
+	/** Return the index of tile (r, c), or -1 if it is a wall. <br>
+	 * Takes time logarithmic in the number of open tiles. */
+	public int index(int r, int c) {
+		int i= Arrays.binarySearch(cells, r * cols + c);
+		return i >= 0 ? i : -1;
+	}
+
+	/** Return the index of node n, or -1 if it is a wall. <br>
+	 * Precondition: n is a node of a cavern with this graph's dimensions. */
+	public int index(Node n) {
+		if (n.getGridGraph() == this) return n.getIndex();
+		return index(n.getTile().getRow(), n.getTile().getColumn());
+	}
+
+	/** Return row * cols + col of the tile at index i. */
+	public int cell(int i) {
+		return cells[i];
+	}
+
+	/** Return the Node at index i. */
+	public Node node(int i) {
+		return nodes[i];
+	}
+
+	/** Return the Node of tile (r, c): the Node of its index, or the Node of the wall, <br>
+	 * created on first use. */
+	public Node nodeAt(int r, int c) {
+		int i= index(r, c);
+		return i >= 0 ? nodes[i] : wall(r * cols + c);
+	}
+
+	/** Return the Node of the wall at cell, creating it on first use. <br>
+	 * It has index -1 and no edges. */
+	private synchronized Node wall(int cell) {
+		Node n= walls.get(cell);
+		if (n == null) {
+			n= new Node(new Tile(cell / cols, cell % cols, 0, Tile.Type.WALL), cols);
+			n.attach(this, -1);
+			walls.put(cell, n);
+		}
+		return n;
+	}
+
+	/** Return the number of edges leaving index i. */
+	public int degree(int i) {
+		return offsets[i + 1] - offsets[i];
+	}
+
+	/** Return the first slot of index i. The slots of i are offset(i)..offset(i+1)-1. */
+	public int offset(int i) {
+		return offsets[i];
+	}
+
+	/** Return the index that slot s goes to. */
+	public int neighbor(int s) {
+		return targets[s];
+	}
+
+	/** Return the length of slot s. */
+	public int weight(int s) {
+		return weights[s];
+	}
+
+	/** Return the slot leaving index i in direction d, or -1 if there is none <br>
+	 * (or i is -1, a wall). Takes constant time: index i has at most MAX_DEGREE slots. */
+	public int slot(int i, Cavern.Direction d) {
+		if (i < 0) return -1;
+		int r= cells[i] / cols + d.getRowDelta();
+		int c= cells[i] % cols + d.getColumnDelta();
+		if (r < 0 || r >= rows || c < 0 || c >= cols) return -1;
+		return slotToCell(i, r * cols + c);
+	}
+
+	/** Return the slot leaving index i that goes to index j, or -1 if there is none. */
+	/* package */ int slotToIndex(int i, int j) {
+		for (int s= offsets[i]; s < offsets[i + 1]; s++ ) {
+			if (targets[s] == j) return s;
+		}
+		return -1;
+	}
+
+	/** Return the slot leaving index i that goes to the tile at cell, or -1 if there is none. */
+	private int slotToCell(int i, int cell) {
+		for (int s= offsets[i]; s < offsets[i + 1]; s++ ) {
+			if (cells[targets[s]] == cell) return s;
+		}
+		return -1;
+	}
+
+	/** Return the slot leaving index i that goes to node q, or -1 if there is none <br>
+	 * (or i is -1, a wall). Takes constant time. */
+	int slotTo(int i, Node q) {
+		if (i < 0) return -1;
+		Tile t= q.getTile();
+		int r= cells[i] / cols;
+		int c= cells[i] % cols;
+		if (Cavern.Direction.of(t.getRow() - r, t.getColumn() - c) == null) return -1;
+		int s= slotToCell(i, t.getRow() * cols + t.getColumn());
+		return s >= 0 && nodes[targets[s]].equals(q) ? s : -1;
+	}
+
+	/** Return the Edge view of slot s, which leaves index i. */
+	Edge edge(int i, int s) {
+		Edge e= edges[s];
+		if (e == null) {
+			e= new Edge(nodes[i], nodes[targets[s]], weights[s]);
+			edges[s]= e;
+		}
+		return e;
+	}
+
+	/** An instance collects the edges of a graph and then builds it. <br>
+	 * Edges are kept in a list in the order they were added, so a builder takes <br>
+	 * memory proportional to the number of edges (plus an int per tile, which is <br>
+	 * dropped once the graph is built). <br>
+	 * A builder builds only one graph. */
+	static class Builder {
+		private final int rows;
+		private final int cols;
+		/** Element i + 1 is the number of edges leaving index i added so far. */
+		private final int[] counts;
+		/** Edge k goes from sources[k] to targets[k] and has length weights[k]. */
+		private int[] sources;
+		private int[] targets;
+		private short[] weights;
+		private int slots;
+
+		/** Constructor: a builder for a grid with rws rows and cls columns and no edges. <br>
+		 * Throw an IllegalArgumentException if the grid has more than MAX_TILES tiles. */
+		Builder(int rws, int cls) {
+			if (rws <= 0 || cls <= 0 || (long) rws * cls > MAX_TILES) {
+				throw new IllegalArgumentException("Grid size out of range: " + rws + "x" + cls);
+			}
+			rows= rws;
+			cols= cls;
+			counts= new int[rws * cls + 1];
+			sources= new int[16];
+			targets= new int[16];
+			weights= new short[16];
+		}
+
+		/** Add an edge of length w from tile (r1, c1) to tile (r2, c2) only. */
+		void addDirected(int r1, int c1, int r2, int c2, int w) {
+			int i= r1 * cols + c1;
+			if (counts[i + 1] == MAX_DEGREE) {
+				throw new IllegalArgumentException("Too many edges at (" + r1 + ", " + c1 + ")");
+			}
+			if (w < 0 || w > Short.MAX_VALUE) {
+				throw new IllegalArgumentException("Edge length out of range: " + w);
+			}
+			if (slots == sources.length) {
+				int n= 2 * slots;
+				sources= Arrays.copyOf(sources, n);
+				targets= Arrays.copyOf(targets, n);
+				weights= Arrays.copyOf(weights, n);
+			}
+			sources[slots]= i;
+			targets[slots]= r2 * cols + c2;
+			weights[slots]= (short) w;
+			counts[i + 1]++ ;
+			slots++ ;
+		}
+
+		/** Add edges of length w from n to m and from m to n. */
+		void addUndirected(Node n, Node m, int w) {
+			Tile a= n.getTile();
+			Tile b= m.getTile();
+			addDirected(a.getRow(), a.getColumn(), b.getRow(), b.getColumn(), w);
+			addDirected(b.getRow(), b.getColumn(), a.getRow(), a.getColumn(), w);
+		}
+
+		/** Return the graph of the edges added so far over the open nodes in ns, <br>
+		 * and make each node a view of it. ns is indexed by row * cols + col and is <br>
+		 * null at walls. Throw an IllegalArgumentException if an edge has a wall <br>
+		 * at one end. <br>
+		 * Precondition: ns has rows * cols elements. */
+		GridGraph build(Node[] ns) {
+			int n= 0;
+			for (Node node : ns) {
+				if (node != null) n++ ;
+			}
+			// Number the open tiles in row-major order and turn their counts into offsets.
+			// Element c of counts is not read again once c - 1 is numbered, so it is
+			// reused for the index of cell c (-1 for a wall).
+			int[] cls= new int[n];
+			Node[] nodes= new Node[n];
+			int[] offs= new int[n + 1];
+			int[] number= counts;
+			int k= 0;
+			for (int c= 0; c < ns.length; c++ ) {
+				int d= counts[c + 1];
+				if (ns[c] == null) {
+					if (d != 0) throw new IllegalArgumentException("Edge from a wall at " + c);
+					number[c]= -1;
+					continue;
+				}
+				cls[k]= c;
+				nodes[k]= ns[c];
+				offs[k + 1]= offs[k] + d;
+				number[c]= k;
+				k++ ;
+			}
+
+			// Place the edges of each index in the order they were added (a stable
+			// counting sort).
+			int[] next= Arrays.copyOf(offs, n);
+			int[] tgts= new int[slots];
+			short[] wts= new short[slots];
+			for (int e= 0; e < slots; e++ ) {
+				int j= number[targets[e]];
+				if (j < 0) throw new IllegalArgumentException("Edge to a wall at " + targets[e]);
+				int s= next[number[sources[e]]]++ ;
+				tgts[s]= j;
+				wts[s]= weights[e];
+			}
+			return new GridGraph(rows, cols, nodes, cls, offs, tgts, wts);
+		}
+	}
+}
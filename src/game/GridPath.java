@@ -0,0 +1,191 @@
+package game;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/** An instance is an immutable path in the graph of a cavern: a sequence of nodes, each <br>
+ * next to the one before it. The nodes are kept as their indices in the cavern's <br>
+ * GridGraph, in an int array, together with the weights of the path up to each node, so <br>
+ * node(i), size() and weight() take constant time.
+ *
+ * subPath shares the arrays of the path it is taken from and takes constant time; concat <br>
+ * copies both paths into new arrays, without looking up any edge. Neither allocates <br>
+ * anything per node. To walk a path in a scram, call follow(state), or call <br>
+ * state.moveTo(node(i)) for i = 1, 2, ... */
+public class GridPath implements Iterable<Node> {
+
+	private final GridGraph graph;
+
+	/** The path is ids[start..start+size-1]. */
+	private final int[] ids;
+	/** weights[i] is the weight of the edges from ids[0] to ids[i]; weights[0] is 0. */
+	private final int[] weights;
+	private final int start;
+	private final int size;
+
+	/** Constructor: the path through the nodes of g with indices ids, in order. <br>
+	 * Throw an IllegalArgumentException if two consecutive indices are not neighbors. */
+	public GridPath(GridGraph g, int[] ids) {
+		this(g, ids, true);
+	}
+
+	/** Constructor: same as GridPath(g, ids), but keeping ids itself instead of a copy <br>
+	 * if copy is false, for callers that have just built ids and never change it. */
+	/* package */ GridPath(GridGraph g, int[] ids, boolean copy) {
+		graph= g;
+		this.ids= copy ? ids.clone() : ids;
+		weights= new int[ids.length];
+		for (int i= 1; i < ids.length; i++ ) {
+			int s= g.slotToIndex(ids[i - 1], ids[i]);
+			if (s < 0) {
+				throw new IllegalArgumentException("Not neighbors: " + ids[i - 1] + ", " + ids[i]);
+			}
+			weights[i]= weights[i - 1] + g.weights[s];
+		}
+		start= 0;
+		size= ids.length;
+	}
+
+	/** Constructor: the path through nodes ns, in order (an empty path of g if ns is empty). <br>
+	 * Throw an IllegalArgumentException if two consecutive nodes are not neighbors. */
+	public GridPath(GridGraph g, List<Node> ns) {
+		this(g, indices(ns), false);
+	}
+
+	/** Constructor: the path ids[st..st+n-1] with weights w, sharing the arrays. */
+	private GridPath(GridGraph g, int[] ids, int[] w, int st, int n) {
+		graph= g;
+		this.ids= ids;
+		weights= w;
+		start= st;
+		size= n;
+	}
+
+	/** Return the indices of the nodes of ns, in order. */
+	private static int[] indices(List<Node> ns) {
+		int[] ids= new int[ns.size()];
+		int i= 0;
+		for (Node v : ns) {
+			ids[i]= v.getIndex();
+			i++ ;
+		}
+		return ids;
+	}
+
+	/** Return the number of nodes on this path. */
+	public int size() {
+		return size;
+	}
+
+	/** Return true iff this path has no nodes. */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** Return the sum of the weights of the edges of this path (0 if it has at most one <br>
+	 * node). This takes constant time. */
+	public int weight() {
+		return size == 0 ? 0 : weights[start + size - 1] - weights[start];
+	}
+
+	/** Return the index in the GridGraph of node i of this path. <br>
+	 * Precondition: 0 <= i < size(). */
+	public int index(int i) {
+		if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i);
+		return ids[start + i];
+	}
+
+	/** Return node i of this path. <br>
+	 * Precondition: 0 <= i < size(). */
+	public Node node(int i) {
+		return graph.node(index(i));
+	}
+
+	/** Return the first node of this path. <br>
+	 * Throw a NoSuchElementException if the path is empty. */
+	public Node first() {
+		if (size == 0) throw new NoSuchElementException();
+		return node(0);
+	}
+
+	/** Return the last node of this path. <br>
+	 * Throw a NoSuchElementException if the path is empty. */
+	public Node last() {
+		if (size == 0) throw new NoSuchElementException();
+		return node(size - 1);
+	}
+
+	/** Return the path of nodes from..to-1 of this path, in constant time. <br>
+	 * Precondition: 0 <= from <= to <= size(). */
+	public GridPath subPath(int from, int to) {
+		if (from < 0 || to > size || from > to) {
+			throw new IndexOutOfBoundsException("subPath(" + from + ", " + to + ") of " + size);
+		}
+		return new GridPath(graph, ids, weights, start + from, to - from);
+	}
+
+	/** Return this path followed by path p, which must start at the last node of this <br>
+	 * path (that node is not repeated). If either path is empty, return the other. <br>
+	 * Throw an IllegalArgumentException if p does not start where this path ends. */
+	public GridPath concat(GridPath p) {
+		if (p.size == 0) return this;
+		if (size == 0) return p;
+		if (p.index(0) != index(size - 1)) {
+			throw new IllegalArgumentException("Path does not start at " + index(size - 1));
+		}
+		int n= size + p.size - 1;
+		int[] is= new int[n];
+		int[] ws= new int[n];
+		System.arraycopy(ids, start, is, 0, size);
+		System.arraycopy(p.ids, p.start + 1, is, size, p.size - 1);
+		int w= weight();
+		for (int i= 0; i < size; i++ ) {
+			ws[i]= weights[start + i] - weights[start];
+		}
+		for (int i= 1; i < p.size; i++ ) {
+			ws[size - 1 + i]= w + p.weights[p.start + i] - p.weights[p.start];
+		}
+		return new GridPath(graph, is, ws, 0, n);
+	}
+
+	/** Move state along this path, from its first node (where state must be) to its last. */
+	public void follow(ScramState state) {
+		for (int i= 1; i < size; i++ ) {
+			state.moveTo(node(i));
+		}
+	}
+
+	/** Return an iterator over the nodes of this path, in order. */
+	@Override
+	public Iterator<Node> iterator() {
+		return asList().iterator();
+	}
+
+	/** Return an unmodifiable view of this path as a list of nodes. <br>
+	 * Its get(i) takes constant time. */
+	public List<Node> asList() {
+		return new NodeList();
+	}
+
+	/** The nodes of this path as a list. */
+	private class NodeList extends AbstractList<Node> implements RandomAccess {
+		@Override
+		public Node get(int i) {
+			return node(i);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	/** Return a representation of this path: its size and weight. */
+	@Override
+	public String toString() {
+		return "path of " + size + " nodes, weight " + weight();
+	}
+}
@@ -23,9 +23,60 @@ public interface HuntState {
 	 * It is possible to move directly to any node identifier in this collection. */
 	Collection<NodeStatus> neighbors();
 
+	/** Store the neighbors of Pollack's current location in ids and distances, <br>
+	 * in the same order as neighbors(), and return how many there are. <br>
+	 * For each k < the returned value, ids[k] is the unique identifier of a neighbor <br>
+	 * and distances[k] is its distance to the Orb along the grid.<br>
+	 * <br>
+	 * The default implementation copies neighbors(). The game overrides it so that it <br>
+	 * allocates nothing, and arrays can be reused for every step.<br>
+	 * Precondition: ids and distances have length at least 4 (a node has at most <br>
+	 * one neighbor in each direction). */
+	default int neighbors(long[] ids, int[] distances) {
+		int k= 0;
+		for (NodeStatus s : neighbors()) {
+			ids[k]= s.getId();
+			distances[k]= s.getDistanceToTarget();
+			k++ ;
+		}
+		return k;
+	}
+
 	/** Return Pollack's current distance along the grid (NOT THE GRAPH) from the Orb. */
 	int distanceToOrb();
 
+	/** Return the number of rows of the cavern. */
+	int getRowCount();
+
+	/** Return the number of columns of the cavern.<br>
+	 * <br>
+	 * The id of the tile in row r and column c is r * getColumnCount() + c, so ids are <br>
+	 * in 0..getRowCount() * getColumnCount() - 1 and fit in an int: a hunter can keep <br>
+	 * its state in arrays (or a BitSet) indexed by (int) id instead of maps keyed by id. */
+	int getColumnCount();
+
+	/** Return the row of the tile with id id, i.e. id / getColumnCount().<br>
+	 * Throw an IllegalArgumentException if id is not in 0..getRowCount() * <br>
+	 * getColumnCount() - 1. */
+	default int rowOf(long id) {
+		int cols= getColumnCount();
+		if (id < 0 || id >= (long) getRowCount() * cols) {
+			throw new IllegalArgumentException("No tile has id " + id);
+		}
+		return (int) (id / cols);
+	}
+
+	/** Return the column of the tile with id id, i.e. id % getColumnCount().<br>
+	 * Throw an IllegalArgumentException if id is not in 0..getRowCount() * <br>
+	 * getColumnCount() - 1. */
+	default int columnOf(long id) {
+		int cols= getColumnCount();
+		if (id < 0 || id >= (long) getRowCount() * cols) {
+			throw new IllegalArgumentException("No tile has id " + id);
+		}
+		return (int) (id % cols);
+	}
+
 	/** Change Pollack's current location to the node given by id.<br>
 	 * <br>
 	 * Throw an IllegalArgumentException if the node with id id is not<br>
@@ -1,33 +1,52 @@
 package game;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
-/** An instance is a priority queue of elements of type E implemented as a min-heap. */
-/* package */ class InternalMinHeap<E> {
+/** An instance is a priority queue of the nodes of a cavern implemented as a min-heap. <br>
+ * Nodes are identified by their index in the cavern's GridGraph (Node.getIndex()) and <br>
+ * priorities are ints, as all edge lengths are. The heap lives in int arrays allocated by <br>
+ * the constructor: nothing is allocated afterwards, and clear() empties it so that one <br>
+ * instance can be reused for many searches. */
+/* package */ class InternalMinHeap {
 
+	/** The heap invariant is given below. Note that / denotes int division.<br>
+	 *
+	 * heap[0..size-1] is viewed as a min-heap, i.e. <br>
+	 * 1. heap[0..size-1] contains the indices in the heap.<br>
+	 * 2. The children of each heap[i] are heap[2i+1] and heap[2i+2].<br>
+	 * 3. The parent of each heap[i] (except heap[0]) is heap[(i-1)/2].<br>
+	 * 4. prio[parent of heap[i]] <= prio[heap[i]].<br>
+	 * 5. For each index k, pos[k] is the position of k in heap, or -1 if k is not <br>
+	 * .. in the heap. */
+	private final int[] heap;
+	private final int[] pos;
+	private final int[] prio;
 	private int size; // number of elements in the priority queue (and heap)
 
-	/** The heap invariant is given below. Note that / denotes int division.<br>
-	 * 
-	 * b[0..size-1] is viewed as a min-heap, i.e. <br>
-	 * 1. Each array element in b[0..size-1] contains a value of the heap.<br>
-	 * 2. The children of each b[i] are b[2i+1] and b[2i+2].<br>
-	 * 3. The parent of each b[i] (except b[0]) is b[(i-1)/2].<br>
-	 * 4. The priority of the parent of each b[i] is <= the priority of b[i].<br>
-	 * 5. Priorities for the b[i] used for the comparison in point 4<br>
-	 * .. are given in map. map contains one entry for each element of<br>
-	 * .. the heap, and map and b have the same size.<br>
-	 * .. For each element e in the heap, the map entry contains in the<br>
-	 * .. Info object the priority of e and its index in b. */
-	private List<E> b= new ArrayList<>();
-	private Map<E, Info> map= new HashMap<>();
-
-	/** Constructor: an empty heap. */
-	public InternalMinHeap() {}
+	/** The graph whose nodes are in the heap (null if the heap holds plain indices). */
+	private final GridGraph graph;
+
+	/** Constructor: an empty heap for the nodes of graph g. */
+	public InternalMinHeap(GridGraph g) {
+		this(g, g.size());
+	}
+
+	/** Constructor: an empty heap for plain indices in 0..capacity-1. <br>
+	 * The methods that take or return a Node must not be used. */
+	public InternalMinHeap(int capacity) {
+		this(null, capacity);
+	}
+
+	/** Constructor: an empty heap for graph g (possibly null) and indices in <br>
+	 * 0..capacity-1. */
+	private InternalMinHeap(GridGraph g, int capacity) {
+		graph= g;
+		heap= new int[capacity];
+		pos= new int[capacity];
+		prio= new int[capacity];
+		Arrays.fill(pos, -1);
+	}
 
 	/** Return the number of elements in the priority queue.<br>
 	 * This operation takes constant time. */
@@ -35,142 +54,148 @@ import java.util.NoSuchElementException;
 		return size;
 	}
 
+	/** Return true iff the priority queue is empty. */
 	public boolean isEmpty() {
 		return size == 0;
 	}
 
-	/** Add e with priority p to the priority queue.<br>
-	 * Throw an illegalArgumentException if e is already in the queue.<br>
-	 * The expected time is O(log N) and the worst-case time is O(N). */
-	public void add(E e, double p) throws IllegalArgumentException {
-		if (map.containsKey(e)) {
-			throw new IllegalArgumentException("Cannot insert the same element twice");
+	/** Return true iff index k is in the priority queue. */
+	public boolean contains(int k) {
+		return pos[k] >= 0;
+	}
+
+	/** Return true iff node n is in the priority queue. */
+	public boolean contains(Node n) {
+		return contains(n.getIndex());
+	}
+
+	/** Remove all elements from the priority queue. <br>
+	 * This takes time proportional to its size, not to its capacity. */
+	public void clear() {
+		for (int i= 0; i < size; i++ ) {
+			pos[heap[i]]= -1;
 		}
+		size= 0;
+	}
 
-		b.add(e);
-		map.put(e, new Info(size, p));
+	/** Add index k with priority p to the priority queue.<br>
+	 * Throw an IllegalArgumentException if k is already in the queue.<br>
+	 * The time is O(log N). */
+	public void add(int k, int p) {
+		if (pos[k] >= 0) {
+			throw new IllegalArgumentException("Cannot insert the same element twice");
+		}
+		prio[k]= p;
+		heap[size]= k;
+		pos[k]= size;
 		size++ ;
 		bubbleUp(size - 1);
 	}
 
-	/** Return the element of the priority queue with lowest priority, <br>
-	 * without changing the queue. <br>
-	 * This operation takes constant time.<br>
-	 * Throw a PCueException with message "priority queue is empty" if the priority queue is
-	 * empty. */
-	public E peek() {
-		if (b.isEmpty()) { throw new NoSuchElementException(); }
-		return b.get(0);
+	/** Add node n with priority p to the priority queue.<br>
+	 * Throw an IllegalArgumentException if n is already in the queue. */
+	public void add(Node n, int p) {
+		add(n.getIndex(), p);
 	}
 
-	/** Remove and return the element of the priority queue with lowest priority.<br>
-	 * The expected time is O(log n) and the worst-case time is O(N).<br>
-	 * Throw a PCueException with message "priority queue is empty" if the priority queue is
-	 * empty. */
-	public E poll() {
-		E val= peek();
-		map.remove(val);
+	/** Return the priority of index k. <br>
+	 * Precondition: k is in the priority queue. */
+	public int priority(int k) {
+		return prio[k];
+	}
+
+	/** Return the index with lowest priority, without changing the queue. <br>
+	 * Throw a NoSuchElementException if the priority queue is empty. */
+	public int peek() {
+		if (size == 0) { throw new NoSuchElementException(); }
+		return heap[0];
+	}
+
+	/** Remove and return the index with lowest priority.<br>
+	 * The time is O(log N).<br>
+	 * Throw a NoSuchElementException if the priority queue is empty. */
+	public int poll() {
+		if (size == 0) { throw new NoSuchElementException(); }
+		int k= heap[0];
+		pos[k]= -1;
 		size-- ;
-		if (size <= 0) {
-			b.remove(0);
-		} else {
-			b.set(0, b.get(size));
-			b.remove(size);
+		if (size > 0) {
+			heap[0]= heap[size];
+			pos[heap[0]]= 0;
 			bubbleDown(0);
 		}
-		return val;
+		return k;
 	}
 
-	/** Change the priority of element e to p.<br>
-	 * The expected time is O(log N) and the worst-case is time O(N).<br>
-	 * Throw an illegalArgumentException if e is not in the priority queue. */
-	public void changePriority(E e, double p) {
-		Info info= map.get(e);
-		if (info == null) { throw new IllegalArgumentException("No element found: " + e); }
+	/** Remove and return the node with lowest priority.<br>
+	 * Throw a NoSuchElementException if the priority queue is empty. */
+	public Node pollNode() {
+		return graph.node(poll());
+	}
 
-		if (p < info.priority) {
-			info.priority= p;
-			bubbleUp(info.index);
+	/** Change the priority of index k to p.<br>
+	 * The time is O(log N).<br>
+	 * Throw an IllegalArgumentException if k is not in the priority queue. */
+	public void changePriority(int k, int p) {
+		int i= pos[k];
+		if (i < 0) { throw new IllegalArgumentException("No element found: " + k); }
+		int old= prio[k];
+		prio[k]= p;
+		if (p < old) {
+			bubbleUp(i);
 		} else {
-			info.priority= p;
-			bubbleDown(info.index);
+			bubbleDown(i);
 		}
 	}
 
-	/** Bubble b[k] up in heap to its right place.<br>
-	 * Precondition: Every b[i] satisfies the heap property except perhaps<br>
+	/** Change the priority of node n to p.<br>
+	 * Throw an IllegalArgumentException if n is not in the priority queue. */
+	public void changePriority(Node n, int p) {
+		changePriority(n.getIndex(), p);
+	}
+
+	/** Bubble heap[k] up in heap to its right place.<br>
+	 * Precondition: Every heap[i] satisfies the heap property except perhaps<br>
 	 * .... k's priority < parent's priority */
 	private void bubbleUp(int k) {
-		E val= b.get(k);
-		Info info= map.get(val);
-
+		int key= heap[k];
+		int p= prio[key];
 		int i= k;
 		while (i > 0) {
 			int parentIdx= (i - 1) / 2;
-			E parentVal= b.get(parentIdx);
-			Info parentInfo= map.get(parentVal);
-
-			if (parentInfo.priority <= info.priority) {
+			int parent= heap[parentIdx];
+			if (prio[parent] <= p) {
 				break;
 			}
-
-			b.set(i, parentVal);
-			parentInfo.index= i;
-
+			heap[i]= parent;
+			pos[parent]= i;
 			i= parentIdx;
 		}
-		b.set(i, val);
-		info.index= i;
+		heap[i]= key;
+		pos[key]= i;
 	}
 
-	/** Bubble b[k] down in heap until it finds the right place.<br>
-	 * Precondition: Every b[i] satisfies the heap property except perhaps<br>
+	/** Bubble heap[k] down in heap until it finds the right place.<br>
+	 * Precondition: Every heap[i] satisfies the heap property except perhaps<br>
 	 * ... k's priority > a child's priority. */
 	private void bubbleDown(int k) {
-		E val= b.get(k);
-		Info info= map.get(val);
-
+		int key= heap[k];
+		int p= prio[key];
 		int i= k;
 		while (2 * i + 1 < size) {
-			int childIdx= getSmallerChild(i);
-			E childVal= b.get(childIdx);
-			Info childInfo= map.get(childVal);
-
-			if (info.priority <= childInfo.priority) {
+			int childIdx= 2 * i + 1;
+			if (childIdx + 1 < size && prio[heap[childIdx + 1]] < prio[heap[childIdx]]) {
+				childIdx++ ;
+			}
+			int child= heap[childIdx];
+			if (p <= prio[child]) {
 				break;
 			}
-
-			b.set(i, childVal);
-			childInfo.index= i;
-
+			heap[i]= child;
+			pos[child]= i;
 			i= childIdx;
 		}
-		b.set(i, val);
-		info.index= i;
-	}
-
-	/** Return the index of the smaller child of b[q]<br>
-	 * Precondition: left child exists: 2q+1 < size of heap */
-	private int getSmallerChild(int q) {
-		int leftIdx= 2 * q + 1;
-		int rightIdx= 2 * q + 2;
-		if (size <= rightIdx) { return leftIdx; }
-
-		Info leftInfo= map.get(b.get(leftIdx));
-		Info rightInfo= map.get(b.get(rightIdx));
-		return leftInfo.priority <= rightInfo.priority ? leftIdx : rightIdx;
-	}
-
-	/** An instance contains the index, value, and priority of an element of the heap. */
-	private static class Info {
-		private int index;  // index of this element in map
-		private double priority; // priority of this element
-
-		/** Constructor: an instance in b[i] with priority p. */
-		private Info(int i, double p) {
-			index= i;
-			priority= p;
-		}
-
+		heap[i]= key;
+		pos[key]= i;
 	}
 }
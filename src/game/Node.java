@@ -1,21 +1,27 @@
 package game;
 
-import java.util.Collections;
-import java.util.LinkedHashSet;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
 
-/** A Node of the graph */
+/** A Node of the graph. <br>
+ * Its edges are stored in the GridGraph of its cavern; getExits() and <br>
+ * getNeighbors() are unmodifiable views of that graph. */
 public class Node {
 
 	/** The unique numerical identifier of this Node */
 	private final long id;
-	/** Represents the edges outgoing from this Node */
-	private final Set<Edge> edges;
-	private final Set<Node> neighbors;
 
-	private final Set<Edge> unmodifiableEdges;
-	private final Set<Node> unmodifiableNeighbors;
+	/** The graph this Node belongs to and its index in it, -1 for a wall <br>
+	 * (set once the graph is built) */
+	private GridGraph graph;
+	private int index;
+
+	/** Views of the edges outgoing from this Node and of its neighbors (created lazily) */
+	private Set<Edge> unmodifiableEdges;
+	private Set<Node> unmodifiableNeighbors;
 
 	/** Extra state that belongs to this node */
 	private final Tile tile;
@@ -28,18 +34,13 @@ public class Node {
 	/** Constructor: a node for tile t with id givenId. */
 	/* package */ Node(long givenId, Tile t) {
 		id= givenId;
-		edges= new LinkedHashSet<>();
-		neighbors= new LinkedHashSet<>();
-
-		unmodifiableEdges= Collections.unmodifiableSet(edges);
-		unmodifiableNeighbors= Collections.unmodifiableSet(neighbors);
-
 		tile= t;
 	}
 
-	/* package */ void addEdge(Edge e) {
-		edges.add(e);
-		neighbors.add(e.getOther(this));
+	/** Make this Node the node at index i of graph g (-1 if it is a wall). */
+	/* package */ void attach(GridGraph g, int i) {
+		graph= g;
+		index= i;
 	}
 
 	/** Return the unique Identifier of this Node. */
@@ -47,22 +48,60 @@ public class Node {
 		return id;
 	}
 
+	/** Return the index of this Node in its GridGraph (the open tiles are numbered <br>
+	 * 0..size()-1 in row-major order; a wall has index -1), so that searches can keep <br>
+	 * their data in arrays of one element per open tile instead of maps keyed by Node. */
+	public int getIndex() {
+		return index;
+	}
+
+	/** Return the GridGraph of the cavern this Node belongs to. */
+	public GridGraph getGridGraph() {
+		return graph;
+	}
+
 	/** Return the Edge of this Node that connects to Node q. Throw an IllegalArgumentException if
-	 * edge doesn't exist */
+	 * edge doesn't exist. Takes constant time. */
 	public Edge getEdge(Node q) {
-		for (Edge e : edges) {
-			if (e.getDest().equals(q)) { return e; }
-		}
-		throw new IllegalArgumentException("getEdge: Node must be a neighbor of this Node");
+		int s= graph == null ? -1 : graph.slotTo(index, q);
+		if (s < 0) throw new IllegalArgumentException("getEdge: Node must be a neighbor of this Node");
+		return graph.edge(index, s);
+	}
+
+	/** Return the Edge of this Node that leaves it in direction d, or null if there is none. */
+	public Edge getEdge(Cavern.Direction d) {
+		int s= graph == null ? -1 : graph.slot(index, d);
+		return s < 0 ? null : graph.edge(index, s);
 	}
 
 	/** Return an unmodifiable view of the Edges leaving this Node. */
 	public Set<Edge> getExits() {
+		if (unmodifiableEdges == null) {
+			unmodifiableEdges= new SlotSet<Edge>() {
+				@Override
+				Edge get(int s) {
+					return graph.edge(index, s);
+				}
+			};
+		}
 		return unmodifiableEdges;
 	}
 
 	/** Return an unmodifiable view of the Nodes neighboring this Node. */
 	public Set<Node> getNeighbors() {
+		if (unmodifiableNeighbors == null) {
+			unmodifiableNeighbors= new SlotSet<Node>() {
+				@Override
+				Node get(int s) {
+					return graph.node(graph.targets[s]);
+				}
+
+				@Override
+				public boolean contains(Object ob) {
+					return ob instanceof Node && graph != null && graph.slotTo(index, (Node) ob) >= 0;
+				}
+			};
+		}
 		return unmodifiableNeighbors;
 	}
 
@@ -84,4 +123,40 @@ public class Node {
 	public int hashCode() {
 		return Objects.hash(id);
 	}
+
+	/** Return true iff this Node has slots in a graph: it is attached and not a wall. */
+	private boolean hasSlots() {
+		return graph != null && index >= 0;
+	}
+
+	/** An unmodifiable set with one element for each slot of this Node in graph. */
+	private abstract class SlotSet<E> extends AbstractSet<E> {
+
+		/** Return the element for slot s. */
+		abstract E get(int s);
+
+		@Override
+		public int size() {
+			return !hasSlots() ? 0 : graph.offsets[index + 1] - graph.offsets[index];
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			return new Iterator<E>() {
+				private int s= !hasSlots() ? 0 : graph.offsets[index];
+				private final int end= !hasSlots() ? 0 : graph.offsets[index + 1];
+
+				@Override
+				public boolean hasNext() {
+					return s < end;
+				}
+
+				@Override
+				public E next() {
+					if (s >= end) throw new NoSuchElementException();
+					return get(s++ );
+				}
+			};
+		}
+	}
 }
@@ -0,0 +1,54 @@
+package game;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/** Runs the phases of games (hunt, scram) with a time limit.<br>
+ * Phases run on a shared pool of daemon threads that are reused from game to game, <br>
+ * instead of on a new thread per phase. A phase that runs out of time is stopped <br>
+ * cooperatively: the game is told to abort, which makes its next call of a <br>
+ * HuntState/ScramState method throw, and the thread is interrupted. */
+/* package */ class PhaseSupervisor {
+
+	/** Milliseconds to wait for an aborted phase to actually stop. */
+	static final long GRACE_MILLIS= 1000;
+
+	private static final ExecutorService POOL= Executors.newCachedThreadPool((r) -> {
+		Thread t= new Thread(r, "game-phase");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/** Not instantiable. */
+	private PhaseSupervisor() {}
+
+	/** Run phase on a pooled thread and wait at most timeout seconds for it. <br>
+	 * Return true if it finished in time. Otherwise run abort (which must make the <br>
+	 * phase stop at its next interaction with the game), interrupt the phase, wait <br>
+	 * at most GRACE_MILLIS for it to stop, and return false. */
+	static boolean run(Runnable phase, long timeout, Runnable abort) {
+		CountDownLatch done= new CountDownLatch(1);
+		Future<?> f= POOL.submit(() -> {
+			try {
+				phase.run();
+			} finally {
+				done.countDown();
+			}
+		});
+		try {
+			if (done.await(timeout, TimeUnit.SECONDS)) return true;
+			abort.run();
+			f.cancel(true);
+			done.await(GRACE_MILLIS, TimeUnit.MILLISECONDS);
+			return false;
+		} catch (InterruptedException e) {
+			abort.run();
+			f.cancel(true);
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
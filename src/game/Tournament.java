@@ -0,0 +1,230 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/** An instance runs many headless games, one per seed, spread over a pool of worker threads, <br>
+ * and aggregates their scores.<br>
+ *
+ * Each game gets its own hunter (from a Supplier) and its own caverns, so a seed gets exactly <br>
+ * the score it would get from GameState.runNewGame(seed, false, hunter). <br>
+ * Games run quietly: nothing goes through outPrintln/errPrintln while they run. */
+public class Tournament {
+
+	/** The way a single game ended. */
+	public enum Outcome {
+		/** Both hunt and scram returned at the right location. */
+		SUCCESS,
+		/** The hunter returned at the wrong location or ran out of steps. */
+		FAILURE,
+		/** The hunter ran out of time in hunt or scram. */
+		TIMEOUT,
+		/** The hunter (or the game itself) threw an exception. */
+		ERROR;
+	}
+
+	/** An instance is the immutable result of one game. */
+	public static class Result {
+		private final long seed;
+		private final int score;
+		private final int gold;
+		private final Outcome outcome;
+		private final GameMetrics metrics;
+
+		/** Constructor: the result of the game with seed s and metrics m (null if none). */
+		private Result(long s, int sc, int g, Outcome o, GameMetrics m) {
+			seed= s;
+			score= sc;
+			gold= g;
+			outcome= o;
+			metrics= m;
+		}
+
+		/** Return the seed of this game. */
+		public long getSeed() {
+			return seed;
+		}
+
+		/** Return the score of this game. */
+		public int getScore() {
+			return score;
+		}
+
+		/** Return the gold collected in this game. */
+		public int getGold() {
+			return gold;
+		}
+
+		/** Return the way this game ended. */
+		public Outcome getOutcome() {
+			return outcome;
+		}
+
+		/** Return the metrics of this game, or null if it did not record them. */
+		public GameMetrics getMetrics() {
+			return metrics;
+		}
+
+		@Override
+		public String toString() {
+			return seed + "," + score + "," + gold + "," + outcome;
+		}
+	}
+
+	private final List<Result> results;
+	private final int[] sortedScores;
+	private final int[] outcomeCounts= new int[Outcome.values().length];
+	private final GameMetrics metrics= GameMetrics.aggregate();
+
+	/** Constructor: the aggregate of results res (in seed order). */
+	private Tournament(List<Result> res) {
+		results= Collections.unmodifiableList(res);
+		sortedScores= new int[res.size()];
+		for (int i= 0; i < res.size(); i++ ) {
+			sortedScores[i]= res.get(i).score;
+			outcomeCounts[res.get(i).outcome.ordinal()]++ ;
+			if (res.get(i).metrics != null) metrics.addAll(res.get(i).metrics);
+		}
+		Arrays.sort(sortedScores);
+	}
+
+	/** Return the n seeds that main(-s seed -n n) plays in sequence. <br>
+	 * If seed is 0, return n random seeds. */
+	public static long[] seeds(long seed, int n) {
+		long[] seeds= new long[n];
+		Random rand= new Random();
+		for (int i= 0; i < n; i++ ) {
+			if (seed == 0) {
+				seeds[i]= rand.nextLong();
+			} else {
+				seeds[i]= seed;
+				seed= new Random(seed).nextLong();
+			}
+		}
+		return seeds;
+	}
+
+	/** Play one game for each of seeds, using workers threads and a new hunter from <br>
+	 * hunters for each game, and return the aggregate. <br>
+	 * Precondition: workers >= 1. */
+	public static Tournament run(long[] seeds, int workers, Supplier<? extends Hunter> hunters) {
+		ExecutorService pool= Executors.newFixedThreadPool(workers, (r) -> {
+			Thread t= new Thread(r, "tournament-worker");
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			List<Future<Result>> futures= new ArrayList<>(seeds.length);
+			for (long s : seeds) {
+				futures.add(pool.submit(() -> play(s, hunters.get())));
+			}
+
+			List<Result> res= new ArrayList<>(seeds.length);
+			for (int i= 0; i < seeds.length; i++ ) {
+				try {
+					res.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					res.add(new Result(seeds[i], 0, 0, Outcome.ERROR, null));
+				}
+			}
+			return new Tournament(res);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Tournament interrupted", e);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/** Play the game with seed seed quietly using hunter h and return its result. */
+	private static Result play(long seed, Hunter h) {
+		GameState state;
+		try {
+			state= new GameState(seed, false, h);
+		} catch (RuntimeException e) {
+			return new Result(seed, 0, 0, Outcome.ERROR, null);
+		}
+		state.setQuiet(true);
+		state.run();
+
+		Outcome o;
+		if (state.getHuntErrored() || state.getScramErrored()) {
+			o= Outcome.ERROR;
+		} else if (state.getHuntTimeout() || state.getScramTimeout()) {
+			o= Outcome.TIMEOUT;
+		} else if (state.getHuntSucceeded() && state.getScramSucceeded()) {
+			o= Outcome.SUCCESS;
+		} else {
+			o= Outcome.FAILURE;
+		}
+		return new Result(seed, state.getScore(), state.getGoldCollected(), o, state.getMetrics());
+	}
+
+	/** Return the results of all games, in the order of their seeds. */
+	public List<Result> getResults() {
+		return results;
+	}
+
+	/** Return the metrics of all games that recorded them, added together. */
+	public GameMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** Return the number of games played. */
+	public int size() {
+		return results.size();
+	}
+
+	/** Return the number of games that ended with outcome o. */
+	public int count(Outcome o) {
+		return outcomeCounts[o.ordinal()];
+	}
+
+	/** Return the mean score (0 if no games were played). */
+	public double mean() {
+		if (sortedScores.length == 0) return 0;
+		long sum= 0;
+		for (int s : sortedScores) {
+			sum+= s;
+		}
+		return sum / (double) sortedScores.length;
+	}
+
+	/** Return the median score (0 if no games were played). */
+	public double median() {
+		int n= sortedScores.length;
+		if (n == 0) return 0;
+		if (n % 2 == 1) return sortedScores[n / 2];
+		return (sortedScores[n / 2 - 1] + (double) sortedScores[n / 2]) / 2;
+	}
+
+	/** Return the p-th percentile score, using the nearest-rank method <br>
+	 * (0 if no games were played). <br>
+	 * Precondition: 0 < p <= 100. */
+	public int percentile(double p) {
+		int n= sortedScores.length;
+		if (n == 0) return 0;
+		int rank= (int) Math.ceil(p / 100 * n);
+		return sortedScores[Math.max(rank, 1) - 1];
+	}
+
+	/** Return a multi-line summary of this tournament. */
+	public String summary() {
+		return "Games          : " + size() + "\n" +
+			"Mean score     : " + String.format("%.2f", mean()) + "\n" +
+			"Median score   : " + median() + "\n" +
+			"p95 score      : " + percentile(95) + "\n" +
+			"Successes      : " + count(Outcome.SUCCESS) + "\n" +
+			"Failures       : " + count(Outcome.FAILURE) + "\n" +
+			"Timeouts       : " + count(Outcome.TIMEOUT) + "\n" +
+			"Errors         : " + count(Outcome.ERROR);
+	}
+}